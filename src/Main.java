@@ -1,6 +1,17 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Collectors;
+import database.ConnectionPool;
+import database.SchemaMigrations;
 import model.Record;
+import model.OffHeapRouteStore;
+import model.RouteSnapshot;
+import model.RouteStore;
+import model.RouteTable;
 import model.Connection;
 import model.TimeUtils;
 import model.Trip;
@@ -10,12 +21,18 @@ import repositories.TripDatabaseRepository;
 import repositories.ClientRepository;
 import service.ConnectionFinder;
 import service.ConnectionSorter;
+import service.ItineraryRanking;
+import service.NetworkReloader;
+import service.RaptorRouter;
+import service.RouteNetwork;
 import service.AdvancedSearch;
 import service.BookingService;
 
 public class Main {
     public static RouteRepository routeRepo = RouteRepository.getInstance();
-    public static List<Record> listOfRoutes;
+    public static final Path SNAPSHOT = Path.of("train_system.snapshot");
+    // Loaded route network and its search engines, replaced as the routes table changes
+    public static NetworkReloader network;
     public static Scanner sc = new Scanner(System.in);
     public static TripDatabaseRepository tripRepo = new TripDatabaseRepository();
     public static ClientRepository clientRepo = new ClientRepository();
@@ -93,6 +110,8 @@ public class Main {
     }
 
     private static void performSearch() {
+        // The whole search runs on this network, even if a reload publishes a newer one meanwhile
+        RouteNetwork net = network.current();
         System.out.println("\n=== Route Search ===");
         System.out.println("(Leave blank to skip any filter)\n");
 
@@ -126,8 +145,7 @@ public class Main {
         String maxDurInput = sc.nextLine().trim();
         Integer maxDuration = maxDurInput.isEmpty() ? null : safeInt(maxDurInput, null);
 
-        AdvancedSearch search = new AdvancedSearch(listOfRoutes);
-        List<Record> directResults = search.searchAdvanced(
+        List<Record> directResults = net.directSearch().searchAdvanced(
                 departure, arrival, trainType, day,
                 maxFirstPrice, maxSecondPrice,
                 minDepInput, maxDepInput, maxDuration
@@ -173,16 +191,97 @@ public class Main {
             String minTxIn = sc.nextLine().trim();
             int minTransfer = minTxIn.isBlank() ? 10 : safeInt(minTxIn, 10);
 
-            System.out.print("Max connections (1 or 2, default 2): ");
-            String maxLegsIn = sc.nextLine().trim();
-            int maxLegs = maxLegsIn.isBlank() ? 2 : Math.min(Math.max(safeInt(maxLegsIn, 2), 1), 2);
+            System.out.println("Search engine:");
+            System.out.println("  1) All connections (depth-first search)");
+            System.out.println("  2) Earliest arrival (connection scan)");
+            System.out.println("  3) Latest departure arriving by a given time (connection scan)");
+            System.out.println("  4) Best trade-offs of duration, transfers and price (round-based)");
+            System.out.print("Choose [1-4] (default 1): ");
+            String engine = sc.nextLine().trim();
+
+            List<List<Connection>> connections;
+            if (engine.equals("2") || engine.equals("3")) {
+                List<Connection> journey;
+                if (engine.equals("2")) {
+                    journey = net.connectionScan().earliestArrival(
+                            departure, arrival, minTransfer,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            minDepInput, maxDepInput, maxDuration
+                    );
+                } else {
+                    System.out.print("Arrive by (HH:MM, e.g., 18:00): ");
+                    String arriveBy = sc.nextLine().trim();
+                    journey = net.connectionScan().latestDeparture(
+                            departure, arrival, minTransfer,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            arriveBy, maxDuration
+                    );
+                }
+                connections = new ArrayList<>();
+                if (!journey.isEmpty()) connections.add(journey);
+            } else if (engine.equals("4")) {
+                System.out.print("Max connections (1-" + RaptorRouter.MAX_LEGS + ", default 4): ");
+                String maxLegsIn = sc.nextLine().trim();
+                int maxLegs = maxLegsIn.isBlank() ? 4 : Math.min(Math.max(safeInt(maxLegsIn, 4), 1), RaptorRouter.MAX_LEGS);
+
+                connections = net.raptor().findParetoConnections(
+                        departure, arrival, minTransfer, maxLegs,
+                        trainType, day, maxFirstPrice, maxSecondPrice,
+                        minDepInput, maxDepInput, maxDuration
+                );
+            } else {
+                System.out.print("Max connections (1-4, default 2): ");
+                String maxLegsIn = sc.nextLine().trim();
+                int maxLegs = maxLegsIn.isBlank() ? 2 : Math.min(Math.max(safeInt(maxLegsIn, 2), 1), 4);
+
+                System.out.print("Max results (blank for all): ");
+                String maxResultsIn = sc.nextLine().trim();
+                int maxResults = maxResultsIn.isBlank() ? Integer.MAX_VALUE : Math.max(safeInt(maxResultsIn, 1), 1);
+
+                ItineraryRanking ranking = null;
+                if (maxResults != Integer.MAX_VALUE) {
+                    System.out.println("Keep the best " + maxResults + " by:");
+                    System.out.println("  0) First found");
+                    System.out.println("  1) Total duration");
+                    System.out.println("  2) Total price — 1st class");
+                    System.out.println("  3) Total price — 2nd class");
+                    System.out.print("Choose [0-3]: ");
+                    ranking = ItineraryRanking.fromChoice(sc.nextLine().trim());
+                }
 
-            ConnectionFinder finder = new ConnectionFinder(listOfRoutes);
-            var connections = finder.findConnections(
-                    departure, arrival, minTransfer, maxLegs,
-                    trainType, day, maxFirstPrice, maxSecondPrice,
-                    minDepInput, maxDepInput, maxDuration
-            );
+                ConnectionFinder finder = net.connectionFinder();
+                if (ranking == ItineraryRanking.DURATION) {
+                    // Fastest journeys: expand toward the destination and stop once the best are known
+                    connections = net.goalDirected().findFastestConnections(
+                            departure, arrival, minTransfer, maxLegs,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            minDepInput, maxDepInput, maxDuration,
+                            maxResults
+                    );
+                } else if (ranking != null) {
+                    connections = finder.findTopConnections(
+                            departure, arrival, minTransfer, maxLegs,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            minDepInput, maxDepInput, maxDuration,
+                            ranking, maxResults
+                    );
+                } else if (maxResults == Integer.MAX_VALUE) {
+                    // Every connection is needed; the finder picks a sequential, parallel or
+                    // meet-in-the-middle search from the size of the query
+                    connections = finder.findAllConnections(
+                            departure, arrival, minTransfer, maxLegs,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            minDepInput, maxDepInput, maxDuration
+                    );
+                } else {
+                    // The search stops as soon as enough connections have been found
+                    connections = finder.streamConnections(
+                            departure, arrival, minTransfer, maxLegs,
+                            trainType, day, maxFirstPrice, maxSecondPrice,
+                            minDepInput, maxDepInput, maxDuration
+                    ).limit(maxResults).collect(Collectors.toCollection(ArrayList::new));
+                }
+            }
 
             if (connections.isEmpty()) {
                 System.out.println("\nNo connections found between " + departure + " and " + arrival + ".");
@@ -234,7 +333,7 @@ public class Main {
         System.out.println("═".repeat(120));
 
         for (Record r : results) {
-            long duration = TimeUtils.minutesBetween(r.getDepartureTime(), r.getArrivalTime());
+            long duration = r.getDurationMinutes();
             String daysStr = formatDaysOfWeek(r.getDaysOfOperation().toString());
 
             System.out.printf("%-15s %-15s %-10s %-10s %6d min %-15s €%10.2f €%10.2f %-10s%n",
@@ -252,9 +351,43 @@ public class Main {
     }
 
     public static void bootstrap() {
+        try {
+            SchemaMigrations.migrate(ConnectionPool.getInstance());
+        } catch (SQLException e) {
+            System.err.println("Error migrating database schema: " + e.getMessage());
+        }
+
         System.out.println("Loading EU Rail Network data from database...");
-        listOfRoutes = routeRepo.getRoutes();
-        System.out.println("✓ Loaded " + listOfRoutes.size() + " routes.");
+        // Read before loading, so that changes made while loading are picked up by the first reload
+        long changeId = routeRepo.getLatestChangeId();
+        long fingerprint = routeRepo.getFingerprint();
+        RouteStore routeStore = null;
+        // -Droutes.storage=offheap serves the routes from the mapped snapshot instead of heap arrays
+        boolean offHeap = "offheap".equalsIgnoreCase(System.getProperty("routes.storage"));
+        if (fingerprint != 0) {
+            routeStore = offHeap ? OffHeapRouteStore.open(SNAPSHOT, fingerprint) : RouteSnapshot.read(SNAPSHOT, fingerprint);
+        }
+        if (routeStore != null) {
+            System.out.println("✓ Loaded " + routeStore.size() + " routes from snapshot " + SNAPSHOT + ".");
+        } else {
+            RouteTable table = RouteTable.of(routeRepo.getRoutes());
+            System.out.println("✓ Loaded " + table.size() + " routes (~"
+                    + table.estimatedBytes() / 1024 + " KB in columns).");
+            if (fingerprint != 0) {
+                try {
+                    RouteSnapshot.write(table, fingerprint, SNAPSHOT);
+                } catch (IOException e) {
+                    System.err.println("Error writing route snapshot: " + e.getMessage());
+                }
+            }
+            routeStore = offHeap ? OffHeapRouteStore.of(table) : table;
+        }
+        RouteNetwork loaded = RouteNetwork.of(routeStore);
+        System.out.println("✓ Two-hop index: " + loaded.connectionFinder().enableTwoHopIndex().stats());
+        network = new NetworkReloader(routeRepo, loaded, changeId);
+        // Bookings resolve routes against the index of the network published with it
+        routeRepo.useIndex(() -> network.current().routeIndex());
+        network.start();
         
         System.out.println("Loading existing trips from database...");
         List<Trip> existingTrips = tripRepo.loadTrips();
@@ -301,7 +434,7 @@ public class Main {
 
         for (int i = 0; i < path.size(); i++) {
             Connection c = path.get(i);
-            long legDuration = TimeUtils.minutesBetween(c.depTime(), c.arrTime());
+            long legDuration = c.durationMinutes();
 
             System.out.println("  Leg " + (i + 1) + ": " + c.toString() +
                     " | Duration: " + legDuration + " min");
@@ -1,27 +1,58 @@
 package database;
 
+import model.DayMask;
 import model.Record;
+import model.RouteTable;
+import parsers.CsvLineParser;
 import repositories.CSVRepository;
+import repositories.RouteIndex;
+import repositories.RouteRepository;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CSVMigration {
-    private static final String DB_URL = "jdbc:sqlite:train_system.db";
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+    // Rows written per transaction; -Dmigration.chunk
+    private static final int CHUNK_SIZE = Math.max(1, Integer.getInteger("migration.chunk", 10_000));
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+    // Unmatched rows are still counted past this many warnings
+    private static final int MAX_ROUTE_WARNINGS = 20;
+    private final ConnectionPool pool = ConnectionPool.getInstance();
+    // Routes written by migrateRoutes, used to match trips without querying the database
+    private RouteIndex routeIndex;
 
     public static void main(String[] args) {
         CSVMigration migration = new CSVMigration();
         
+        // --resume continues an interrupted import instead of recreating the tables
+        boolean resume = Arrays.asList(args).contains("--resume");
+        
         try {
-            migration.createTables();
-            System.out.println("Tables created successfully!");
+            if (resume) {
+                SchemaMigrations.migrate(migration.pool);
+            } else {
+                migration.createTables();
+                System.out.println("Tables created successfully!");
+            }
             
             migration.migrateRoutes("src/data/eu_rail_network.csv");
             System.out.println("Routes migrated successfully!");
@@ -42,101 +73,73 @@ public class CSVMigration {
      * Creates all necessary database tables
      */
     public void createTables() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
+        try (ConnectionPool.PooledConnection conn = pool.write();
+             Statement stmt = conn.connection().createStatement()) {
             
             // Drop existing tables if they exist
             stmt.execute("DROP TABLE IF EXISTS trips");
             stmt.execute("DROP TABLE IF EXISTS reservations");
             stmt.execute("DROP TABLE IF EXISTS travellers");
             stmt.execute("DROP TABLE IF EXISTS routes");
+            stmt.execute("DROP TABLE IF EXISTS trip_import_ids");
+            stmt.execute("DROP TABLE IF EXISTS import_checkpoints");
             
-            // Create routes table
-            stmt.execute("""
-                CREATE TABLE routes (
-                    route_id TEXT PRIMARY KEY,
-                    departure_city TEXT NOT NULL,
-                    arrival_city TEXT NOT NULL,
-                    departure_time TEXT NOT NULL,
-                    arrival_time TEXT NOT NULL,
-                    train_type TEXT NOT NULL,
-                    days_of_operation TEXT NOT NULL,
-                    first_class_rate REAL NOT NULL,
-                    second_class_rate REAL NOT NULL
-                )
-                """);
-            
-            // Create travellers table
-            stmt.execute("""
-                CREATE TABLE travellers (
-                    traveller_id TEXT PRIMARY KEY,
-                    first_name TEXT NOT NULL,
-                    last_name TEXT NOT NULL,
-                    age INTEGER NOT NULL
-                )
-                """);
-            
-            // Create trips table with auto-increment numeric ID
-            stmt.execute("""
-                CREATE TABLE trips (
-                    trip_id INTEGER PRIMARY KEY AUTOINCREMENT
-                )
-                """);
-            
-            // Create reservations table (links trips, travellers, and routes)
-            stmt.execute("""
-                CREATE TABLE reservations (
-                    reservation_id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    trip_id INTEGER NOT NULL,
-                    ticket_number INTEGER NOT NULL,
-                    traveller_id TEXT NOT NULL,
-                    route_id TEXT NOT NULL,
-                    FOREIGN KEY (trip_id) REFERENCES trips(trip_id),
-                    FOREIGN KEY (traveller_id) REFERENCES travellers(traveller_id),
-                    FOREIGN KEY (route_id) REFERENCES routes(route_id),
-                    UNIQUE(trip_id, traveller_id)
-                )
-                """);
+            // Recreate the tables at the latest schema version. The route change log is kept so
+            // its ids are never reused; dropping routes logs no deletions, so mark all routes as changed
+            SchemaMigrations.reset(conn);
+            SchemaMigrations.migrate(conn);
+            PreparedStatement logAll = conn.prepare("INSERT INTO route_changes (route_id) VALUES (?)");
+            logAll.setString(1, RouteRepository.ALL_ROUTES_CHANGED);
+            logAll.executeUpdate();
             
             System.out.println("Database tables created successfully!");
         }
     }
 
     /**
-     * Migrates route data from CSV to database
+     * Migrates route data from CSV to database, committing every chunk of routes.
+     * Routes already in the table are kept, so the import can simply be run again after a failure.
      */
     public void migrateRoutes(String filePath) throws SQLException {
         CSVRepository csvRepo = CSVRepository.getInstance();
         List<Record> routes = csvRepo.getRoutes(filePath);
         
         String insertSQL = """
-            INSERT INTO routes (route_id, departure_city, arrival_city, departure_time, 
-                              arrival_time, train_type, days_of_operation, first_class_rate, 
-                              second_class_rate)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            INSERT OR IGNORE INTO routes (route_id, departure_city, arrival_city, departure_time,
+                              arrival_time, arrival_day_offset, train_type, days_of_operation,
+                              first_class_rate, second_class_rate)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
-            
-            conn.setAutoCommit(false); // Use transaction for better performance
+        try (ConnectionPool.PooledConnection conn = pool.write()) {
+            PreparedStatement pstmt = conn.prepare(insertSQL);
+            conn.connection().setAutoCommit(false); // Use transaction for better performance
             
+            int pending = 0;
             for (Record route : routes) {
                 pstmt.setString(1, route.getRouteId());
                 pstmt.setString(2, route.getDepartureCity());
                 pstmt.setString(3, route.getArrivalCity());
                 pstmt.setString(4, route.getDepartureTime().format(TIME_FMT));
                 pstmt.setString(5, route.getArrivalTime().format(TIME_FMT));
-                pstmt.setString(6, route.getTrainType());
-                pstmt.setString(7, formatDaysOfOperation(route.getDaysOfOperation()));
-                pstmt.setDouble(8, route.getFirstClassRate());
-                pstmt.setDouble(9, route.getSecondClassRate());
+                pstmt.setInt(6, route.getArrivalDayOffset());
+                pstmt.setString(7, route.getTrainType());
+                pstmt.setString(8, formatDaysOfOperation(route.getDaysOfOperation()));
+                pstmt.setDouble(9, route.getFirstClassRate());
+                pstmt.setDouble(10, route.getSecondClassRate());
                 pstmt.addBatch();
+
+                if (++pending == CHUNK_SIZE) {
+                    pstmt.executeBatch();
+                    conn.connection().commit();
+                    pending = 0;
+                }
             }
             
             pstmt.executeBatch();
-            conn.commit();
+            conn.connection().commit();
             
+            routeIndex = new RouteIndex(RouteTable.of(routes));
             System.out.println("Migrated " + routes.size() + " routes");
         }
     }
@@ -144,162 +147,297 @@ public class CSVMigration {
     /**
      * Migrates trip and traveller data from CSV to database
      * Maps old alphanumeric trip IDs to new numeric IDs
+     * <p>
+     * The file is streamed in chunks of lines: parser threads split the chunks and match their
+     * routes against the in-memory route index, while this thread writes the parsed chunks in
+     * file order, one transaction per chunk. Each transaction also records how many lines of the
+     * file are done and which numeric ID every old trip ID received, so after a failure the
+     * import resumes from the last committed chunk instead of starting over.
      */
     public void migrateTrips(String filePath) throws SQLException {
-        String insertTravellerSQL = """
-            INSERT OR IGNORE INTO travellers (traveller_id, first_name, last_name, age)
-            VALUES (?, ?, ?, ?)
-            """;
-        String insertReservationSQL = """
-            INSERT INTO reservations (trip_id, ticket_number, traveller_id, route_id)
-            VALUES (?, ?, ?, ?)
-            """;
+        RouteIndex index = routeIndex != null
+                ? routeIndex
+                : new RouteIndex(RouteTable.of(RouteRepository.getInstance().getRoutes()));
+        String source = Path.of(filePath).toAbsolutePath().normalize().toString();
+        int threads = Math.max(1, Integer.getInteger("migration.threads", Runtime.getRuntime().availableProcessors()));
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "trip-csv-parser");
+            t.setDaemon(true);
+            return t;
+        });
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement travellerStmt = conn.prepareStatement(insertTravellerSQL);
-             PreparedStatement reservationStmt = conn.prepareStatement(insertReservationSQL);
+        try (ConnectionPool.PooledConnection conn = pool.write();
              BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             
-            conn.setAutoCommit(false);
+            TripImport tripImport = new TripImport(conn, source);
             
-            // Skip header
+            // Skip header and the lines committed by an earlier run
             reader.readLine();
+            long line = 0;
+            while (line < tripImport.linesDone && reader.readLine() != null) {
+                line++;
+            }
+            if (line > 0) {
+                System.out.println("Resuming trips import after line " + line);
+            }
             
-            int travellerCount = 0;
-            int reservationCount = 0;
-            
-            // Map old alphanumeric trip IDs to new numeric ones
-            java.util.Map<String, Long> tripIdMap = new java.util.HashMap<>();
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-                
-                if (values.length < 14) continue; // Skip malformed lines
-                
-                String oldTripId = values[0].trim();
-                long ticketNumber = Long.parseLong(values[1].trim());
-                String firstName = values[2].trim();
-                String lastName = values[3].trim();
-                int age = Integer.parseInt(values[4].trim());
-                String travellerId = values[5].trim();
-                String departureCity = values[6].trim();
-                String arrivalCity = values[7].trim();
-                String departureTime = values[8].trim();
-                String arrivalTime = values[9].trim();
-                String trainType = values[10].trim();
-                String daysOfOperation = values[11].replaceAll("^\"|\"$", "").trim();
-                double firstClassRate = Double.parseDouble(values[12].trim());
-                double secondClassRate = Double.parseDouble(values[13].trim());
-                
-                // Get or create numeric trip ID
-                long numericTripId;
-                if (tripIdMap.containsKey(oldTripId)) {
-                    numericTripId = tripIdMap.get(oldTripId);
-                } else {
-                    // Create new trip with auto-increment ID
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.executeUpdate("INSERT INTO trips (trip_id) VALUES (NULL)");
-                        try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
-                            if (rs.next()) {
-                                numericTripId = rs.getLong(1);
-                                tripIdMap.put(oldTripId, numericTripId);
-                            } else {
-                                continue;
-                            }
-                        }
+            // Chunks are written in file order; at most two per parser thread are in memory
+            Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+            List<String> lines = new ArrayList<>(CHUNK_SIZE);
+            String text;
+            while ((text = reader.readLine()) != null) {
+                lines.add(text);
+                line++;
+                if (lines.size() == CHUNK_SIZE) {
+                    inFlight.add(submit(parsers, lines, line, index));
+                    lines = new ArrayList<>(CHUNK_SIZE);
+                    if (inFlight.size() >= threads * 2) {
+                        tripImport.write(await(inFlight.poll()));
                     }
                 }
-                
-                // Insert traveller
-                travellerStmt.setString(1, travellerId);
-                travellerStmt.setString(2, firstName);
-                travellerStmt.setString(3, lastName);
-                travellerStmt.setInt(4, age);
-                travellerStmt.addBatch();
-                travellerCount++;
-                
-                // Find matching route
-                String routeId = findMatchingRoute(conn, departureCity, arrivalCity, 
-                                                  departureTime, arrivalTime, trainType,
-                                                  daysOfOperation, firstClassRate, secondClassRate);
-                
-                if (routeId != null) {
-                    // Insert reservation
-                    reservationStmt.setLong(1, numericTripId);
-                    reservationStmt.setLong(2, ticketNumber);
-                    reservationStmt.setString(3, travellerId);
-                    reservationStmt.setString(4, routeId);
-                    reservationStmt.addBatch();
-                    reservationCount++;
-                } else {
-                    System.err.println("Warning: No matching route found for trip " + oldTripId);
-                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(submit(parsers, lines, line, index));
+            }
+            while (!inFlight.isEmpty()) {
+                tripImport.write(await(inFlight.poll()));
             }
             
-            travellerStmt.executeBatch();
-            reservationStmt.executeBatch();
-            conn.commit();
-            
-            System.out.println("Migrated " + tripIdMap.size() + " trips (converted to numeric IDs)");
-            System.out.println("Migrated " + travellerCount + " travellers (unique count may be lower)");
-            System.out.println("Migrated " + reservationCount + " reservations");
+            tripImport.printSummary();
             
         } catch (IOException e) {
             throw new SQLException("Error reading trips CSV file: " + e.getMessage(), e);
+        } finally {
+            parsers.shutdownNow();
         }
     }
 
     /**
-     * Finds a matching route ID based on trip details
+     * One trips CSV row, with the ID of its matching route or null when no route matches
      */
-    private String findMatchingRoute(Connection conn, String departureCity, String arrivalCity,
-                                     String departureTime, String arrivalTime, String trainType,
-                                     String daysOfOperation, double firstClassRate, double secondClassRate) 
-            throws SQLException {
-        
-        String query = """
-            SELECT route_id FROM routes 
-            WHERE departure_city = ? 
-            AND arrival_city = ? 
-            AND departure_time = ?
-            AND train_type = ?
-            AND first_class_rate = ?
-            AND second_class_rate = ?
-            """;
+    private record TripRow(String oldTripId, long ticketNumber, String firstName, String lastName,
+                           int age, String travellerId, String routeId) {
+    }
+
+    /**
+     * The parsed rows of a chunk and the number of file lines read up to its end
+     */
+    private record ParsedChunk(List<TripRow> rows, int malformed, long lastLine) {
+    }
+
+    private static Future<ParsedChunk> submit(ExecutorService parsers, List<String> lines, long lastLine,
+                                              RouteIndex index) {
+        return parsers.submit(() -> {
+            List<TripRow> rows = new ArrayList<>(lines.size());
+            int malformed = 0;
+            for (String line : lines) {
+                TripRow row = parseTrip(line, index);
+                if (row == null) {
+                    malformed++;
+                } else {
+                    rows.add(row);
+                }
+            }
+            return new ParsedChunk(rows, malformed, lastLine);
+        });
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> chunk) throws SQLException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Trips import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Error parsing trips CSV file: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Parses a trips CSV line, or returns null for a malformed one
+     */
+    private static TripRow parseTrip(String line, RouteIndex index) {
+        String[] values = CsvLineParser.split(line);
+        if (values.length < 14) return null;
         
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, departureCity);
-            pstmt.setString(2, arrivalCity);
-            pstmt.setString(3, departureTime);
-            pstmt.setString(4, trainType);
-            pstmt.setDouble(5, firstClassRate);
-            pstmt.setDouble(6, secondClassRate);
+        try {
+            String departureCity = values[6].trim();
+            String arrivalCity = values[7].trim();
+            String trainType = values[10].trim();
+            double firstClassRate = Double.parseDouble(values[12].trim());
+            double secondClassRate = Double.parseDouble(values[13].trim());
             
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("route_id");
+            // Find matching route
+            String routeId;
+            try {
+                routeId = index.findRouteId(departureCity, arrivalCity, LocalTime.parse(values[8].trim(), TIME_FMT),
+                        trainType, firstClassRate, secondClassRate);
+            } catch (DateTimeParseException e) {
+                routeId = null;
+            }
+            
+            return new TripRow(values[0].trim(), Long.parseLong(values[1].trim()), values[2].trim(),
+                    values[3].trim(), Integer.parseInt(values[4].trim()), values[5].trim(), routeId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * State of one trips import on the write connection: the old to numeric trip ID map,
+     * the checkpoint and the counters
+     */
+    private static final class TripImport {
+        private final ConnectionPool.PooledConnection conn;
+        private final String source;
+        private final Map<String, Long> tripIdMap = new HashMap<>();
+        private final long started = System.nanoTime();
+        private long linesDone;
+        private long lastTripId;
+        private long rows, trips, reservations, unmatched, malformed;
+        private long lastReport = started;
+
+        TripImport(ConnectionPool.PooledConnection conn, String source) throws SQLException {
+            this.conn = conn;
+            this.source = source;
+            conn.connection().setAutoCommit(false);
+            
+            PreparedStatement checkpoint = conn.prepare("SELECT lines_done FROM import_checkpoints WHERE source = ?");
+            checkpoint.setString(1, source);
+            try (ResultSet rs = checkpoint.executeQuery()) {
+                linesDone = rs.next() ? rs.getLong(1) : 0;
+            }
+            try (ResultSet rs = conn.prepare("SELECT source_trip_id, trip_id FROM trip_import_ids").executeQuery()) {
+                while (rs.next()) {
+                    tripIdMap.put(rs.getString(1), rs.getLong(2));
                 }
             }
+            // Numeric IDs are assigned here rather than read back one trip at a time
+            try (ResultSet rs = conn.prepare("SELECT COALESCE(MAX(trip_id), 0) FROM trips").executeQuery()) {
+                lastTripId = rs.next() ? rs.getLong(1) : 0;
+            }
+            conn.connection().commit();
+        }
+
+        /**
+         * Writes a parsed chunk and its checkpoint in one transaction
+         */
+        void write(ParsedChunk chunk) throws SQLException {
+            PreparedStatement tripStmt = conn.prepare("INSERT INTO trips (trip_id) VALUES (?)");
+            PreparedStatement tripIdStmt = conn.prepare(
+                    "INSERT INTO trip_import_ids (source_trip_id, trip_id) VALUES (?, ?)");
+            PreparedStatement travellerStmt = conn.prepare("""
+                INSERT OR IGNORE INTO travellers (traveller_id, first_name, last_name, age)
+                VALUES (?, ?, ?, ?)
+                """);
+            PreparedStatement reservationStmt = conn.prepare("""
+                INSERT INTO reservations (trip_id, ticket_number, traveller_id, route_id)
+                VALUES (?, ?, ?, ?)
+                """);
+            PreparedStatement checkpointStmt = conn.prepare("""
+                INSERT INTO import_checkpoints (source, lines_done) VALUES (?, ?)
+                ON CONFLICT(source) DO UPDATE SET lines_done = excluded.lines_done
+                """);
+            
+            List<String> newTripIds = new ArrayList<>();
+            int chunkReservations = 0;
+            int chunkUnmatched = 0;
+            try {
+                for (TripRow row : chunk.rows()) {
+                    // Get or create numeric trip ID
+                    Long numericTripId = tripIdMap.get(row.oldTripId());
+                    if (numericTripId == null) {
+                        numericTripId = ++lastTripId;
+                        tripIdMap.put(row.oldTripId(), numericTripId);
+                        newTripIds.add(row.oldTripId());
+                        
+                        tripStmt.setLong(1, numericTripId);
+                        tripStmt.addBatch();
+                        tripIdStmt.setString(1, row.oldTripId());
+                        tripIdStmt.setLong(2, numericTripId);
+                        tripIdStmt.addBatch();
+                    }
+                    
+                    travellerStmt.setString(1, row.travellerId());
+                    travellerStmt.setString(2, row.firstName());
+                    travellerStmt.setString(3, row.lastName());
+                    travellerStmt.setInt(4, row.age());
+                    travellerStmt.addBatch();
+                    
+                    if (row.routeId() != null) {
+                        reservationStmt.setLong(1, numericTripId);
+                        reservationStmt.setLong(2, row.ticketNumber());
+                        reservationStmt.setString(3, row.travellerId());
+                        reservationStmt.setString(4, row.routeId());
+                        reservationStmt.addBatch();
+                        chunkReservations++;
+                    } else if (unmatched + chunkUnmatched++ < MAX_ROUTE_WARNINGS) {
+                        System.err.println("Warning: No matching route found for trip " + row.oldTripId());
+                    }
+                }
+                
+                tripStmt.executeBatch();
+                tripIdStmt.executeBatch();
+                travellerStmt.executeBatch();
+                reservationStmt.executeBatch();
+                checkpointStmt.setString(1, source);
+                checkpointStmt.setLong(2, chunk.lastLine());
+                checkpointStmt.executeUpdate();
+                conn.connection().commit();
+            } catch (SQLException e) {
+                // Nothing of this chunk was committed; a rerun resumes at its first line
+                conn.connection().rollback();
+                newTripIds.forEach(tripIdMap::remove);
+                throw e;
+            }
+            
+            linesDone = chunk.lastLine();
+            rows += chunk.rows().size();
+            trips += newTripIds.size();
+            reservations += chunkReservations;
+            unmatched += chunkUnmatched;
+            malformed += chunk.malformed();
+            
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                System.out.printf("  %,d rows imported (%,.0f rows/s), %,d lines done%n",
+                        rows, rowsPerSecond(now), linesDone);
+            }
+        }
+
+        private double rowsPerSecond(long now) {
+            return rows / Math.max((now - started) / 1e9, 1e-3);
+        }
+
+        void printSummary() {
+            long now = System.nanoTime();
+            System.out.printf("Imported %,d rows in %.1f s (%,.0f rows/s)%n",
+                    rows, (now - started) / 1e9, rowsPerSecond(now));
+            System.out.println("Migrated " + trips + " trips (converted to numeric IDs)");
+            System.out.println("Migrated " + rows + " travellers (unique count may be lower)");
+            System.out.println("Migrated " + reservations + " reservations");
+            if (unmatched > MAX_ROUTE_WARNINGS) {
+                System.err.println(unmatched + " rows in total had no matching route");
+            }
+            if (malformed > 0) {
+                System.err.println("Skipped " + malformed + " malformed lines");
+            }
         }
-        
-        return null;
     }
 
     /**
      * Formats days of operation for storage
      */
-    private String formatDaysOfOperation(HashSet<DayOfWeek> days) {
-        if (days.size() == 7) {
+    private String formatDaysOfOperation(DayMask days) {
+        if (days.isDaily()) {
             return "Daily";
         }
         
         StringBuilder sb = new StringBuilder();
-        for (DayOfWeek day : DayOfWeek.values()) {
-            if (days.contains(day)) {
-                if (sb.length() > 0) sb.append(",");
-                sb.append(formatDay(day));
-            }
+        for (DayOfWeek day : days.days()) {
+            if (sb.length() > 0) sb.append(",");
+            sb.append(formatDay(day));
         }
         return sb.toString();
     }
@@ -323,8 +461,8 @@ public class CSVMigration {
      * Prints statistics about the migrated data
      */
     public void printStatistics() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             Statement stmt = conn.connection().createStatement()) {
             
             System.out.println("\n=== Database Statistics ===");
             
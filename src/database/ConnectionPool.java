@@ -0,0 +1,256 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small pool of long-lived connections to the SQLite database, shared by all repositories.
+ * Connections are opened lazily up to a fixed size and each keeps its prepared statements
+ * in an LRU cache, so repeated queries skip both opening the file and compiling the SQL.
+ * Readers each get their own connection; writers additionally take a single write lock,
+ * since SQLite allows one writer at a time and would otherwise fail with SQLITE_BUSY.
+ * <p>
+ * New connections are configured with a {@link StorageProfile}.
+ * Sizes can be set with -Ddb.pool.size (connections), -Ddb.pool.statements (cached
+ * statements per connection) and -Ddb.pool.timeoutMillis (wait for a free connection).
+ */
+public final class ConnectionPool {
+    public static final String DB_URL = "jdbc:sqlite:train_system.db";
+
+    private volatile static ConnectionPool instance;
+
+    private final String url;
+    private final StorageProfile profile;
+    private final int statementCacheSize;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final BlockingQueue<PooledConnection> idle;
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, StorageProfile profile, int size, int statementCacheSize, long timeoutMillis) {
+        if (size < 1) throw new IllegalArgumentException("Pool size must be at least 1");
+        this.url = url;
+        this.profile = profile;
+        this.statementCacheSize = statementCacheSize;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(size, true);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    public static ConnectionPool getInstance() {
+        if (instance == null) {
+            synchronized (ConnectionPool.class) {
+                if (instance == null) {
+                    int cpus = Runtime.getRuntime().availableProcessors();
+                    ConnectionPool pool = new ConnectionPool(DB_URL, StorageProfile.fromSystemProperty(),
+                            Integer.getInteger("db.pool.size", Math.max(2, Math.min(8, cpus))),
+                            Integer.getInteger("db.pool.statements", 32),
+                            Long.getLong("db.pool.timeoutMillis", 30_000L));
+                    Runtime.getRuntime().addShutdownHook(new Thread(pool::close));
+                    instance = pool;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Borrows a connection for reading; close it to give it back
+     */
+    public PooledConnection read() throws SQLException {
+        return borrow(false);
+    }
+
+    /**
+     * Borrows a connection for writing, holding the write lock until it is closed
+     */
+    public PooledConnection write() throws SQLException {
+        try {
+            if (!writeLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for the database write lock");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database write lock", e);
+        }
+        try {
+            return borrow(true);
+        } catch (SQLException | RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a write connection whose commits are synced to disk whatever the profile, for
+     * writes that are reported as saved once committed; the profile's setting is restored on close
+     */
+    public PooledConnection durableWrite() throws SQLException {
+        PooledConnection pooled = write();
+        if (!profile.syncsEveryCommit()) {
+            try (Statement stmt = pooled.connection.createStatement()) {
+                stmt.execute(StorageProfile.SYNCHRONOUS_FULL);
+                pooled.forcedSync = true;
+            } catch (SQLException e) {
+                pooled.close();
+                throw e;
+            }
+        }
+        return pooled;
+    }
+
+    private PooledConnection borrow(boolean writer) throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        PooledConnection pooled = idle.poll();
+        try {
+            if (pooled == null || pooled.connection.isClosed()) {
+                pooled = new PooledConnection(open());
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        pooled.writer = writer;
+        pooled.borrowed = true;
+        return pooled;
+    }
+
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try {
+            profile.apply(connection);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    public StorageProfile profile() {
+        return profile;
+    }
+
+    private void release(PooledConnection pooled) {
+        boolean writer = pooled.writer;
+        boolean healthy = true;
+        try {
+            if (!pooled.connection.getAutoCommit()) {
+                // Work the borrower neither committed nor rolled back is discarded
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            if (pooled.forcedSync) {
+                pooled.forcedSync = false;
+                try (Statement stmt = pooled.connection.createStatement()) {
+                    stmt.execute(profile.synchronousPragma());
+                }
+            }
+            healthy = !pooled.connection.isClosed();
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        if (!healthy || closed || !idle.offer(pooled)) {
+            pooled.discard();
+        }
+        permits.release();
+        if (writer) writeLock.unlock();
+    }
+
+    /**
+     * Closes idle connections and refuses further borrowing; borrowed connections are closed when returned
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) pooled.discard();
+    }
+
+    /**
+     * Connection borrowed from the pool together with its cached prepared statements.
+     * Statements from {@link #prepare} belong to the cache and must not be closed by the caller;
+     * closing the pooled connection returns it to the pool and rolls back any open transaction.
+     */
+    public final class PooledConnection implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private boolean writer;
+        private boolean borrowed;
+        private boolean forcedSync;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        /**
+         * Returns the cached statement for this SQL, preparing it on first use
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+                statement.clearBatch();
+            }
+            return statement;
+        }
+
+        @Override
+        public void close() {
+            if (!borrowed) return;
+            borrowed = false;
+            release(this);
+        }
+
+        private void discard() {
+            for (PreparedStatement statement : statements.values()) closeQuietly(statement);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing database connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
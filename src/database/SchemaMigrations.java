@@ -0,0 +1,205 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Versioned, incremental schema changes for train_system.db.
+ * The schema version is kept in {@code PRAGMA user_version}; {@link #migrate} applies every
+ * migration above the stored version in order, each in its own transaction together with the
+ * version bump, so an existing database is upgraded in place without losing data.
+ * New changes are appended to {@link #MIGRATIONS}; released migrations are never edited.
+ */
+public final class SchemaMigrations {
+
+    private record Migration(int version, String description, List<String> statements) {
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "base tables", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS routes (
+                        route_id TEXT PRIMARY KEY,
+                        departure_city TEXT NOT NULL,
+                        arrival_city TEXT NOT NULL,
+                        departure_time TEXT NOT NULL,
+                        arrival_time TEXT NOT NULL,
+                        train_type TEXT NOT NULL,
+                        days_of_operation TEXT NOT NULL,
+                        first_class_rate REAL NOT NULL,
+                        second_class_rate REAL NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS travellers (
+                        traveller_id TEXT PRIMARY KEY,
+                        first_name TEXT NOT NULL,
+                        last_name TEXT NOT NULL,
+                        age INTEGER NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS trips (
+                        trip_id INTEGER PRIMARY KEY AUTOINCREMENT
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS reservations (
+                        reservation_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        trip_id INTEGER NOT NULL,
+                        ticket_number INTEGER NOT NULL,
+                        traveller_id TEXT NOT NULL,
+                        route_id TEXT NOT NULL,
+                        FOREIGN KEY (trip_id) REFERENCES trips(trip_id),
+                        FOREIGN KEY (traveller_id) REFERENCES travellers(traveller_id),
+                        FOREIGN KEY (route_id) REFERENCES routes(route_id),
+                        UNIQUE(trip_id, traveller_id)
+                    )
+                    """)),
+            // reservations(trip_id) is already served by the UNIQUE(trip_id, traveller_id) index
+            new Migration(2, "secondary indexes for route and trip lookups", List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_routes_departure_city ON routes(departure_city, departure_time)",
+                    "CREATE INDEX IF NOT EXISTS idx_routes_arrival_city ON routes(arrival_city, departure_time)",
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_routes_match
+                        ON routes(departure_city, arrival_city, departure_time, train_type)
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_reservations_traveller ON reservations(traveller_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_travellers_last_name ON travellers(LOWER(last_name))")),
+            // Bookkeeping of CSVMigration, so that an interrupted trips import can resume
+            new Migration(3, "trip import ids and checkpoints", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS trip_import_ids (
+                        source_trip_id TEXT PRIMARY KEY,
+                        trip_id INTEGER NOT NULL
+                    ) WITHOUT ROWID
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS import_checkpoints (
+                        source TEXT PRIMARY KEY,
+                        lines_done INTEGER NOT NULL
+                    )
+                    """)),
+            // Every write to routes is logged by id, so a running application can reload only what changed
+            new Migration(4, "route change log", List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS route_changes (
+                        change_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        route_id TEXT NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TRIGGER IF NOT EXISTS routes_log_insert AFTER INSERT ON routes
+                    BEGIN
+                        INSERT INTO route_changes (route_id) VALUES (NEW.route_id);
+                    END
+                    """,
+                    """
+                    CREATE TRIGGER IF NOT EXISTS routes_log_update AFTER UPDATE ON routes
+                    BEGIN
+                        INSERT INTO route_changes (route_id) VALUES (OLD.route_id);
+                        INSERT INTO route_changes (route_id) SELECT NEW.route_id WHERE NEW.route_id <> OLD.route_id;
+                    END
+                    """,
+                    """
+                    CREATE TRIGGER IF NOT EXISTS routes_log_delete AFTER DELETE ON routes
+                    BEGIN
+                        INSERT INTO route_changes (route_id) VALUES (OLD.route_id);
+                    END
+                    """)),
+            // The last change id is the version of the routes table (RouteRepository.getFingerprint);
+            // a random start keeps a recreated database from repeating the versions of an earlier file
+            new Migration(5, "random start for route change ids", List.of(
+                    """
+                    INSERT INTO sqlite_sequence (name, seq)
+                    SELECT 'route_changes', 0
+                    WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = 'route_changes')
+                    """,
+                    """
+                    UPDATE sqlite_sequence SET seq = seq + 1 + ABS(RANDOM() % 1000000000000)
+                    WHERE name = 'route_changes'
+                    """)),
+            // The "(+Nd)" of a timetable arrival is kept, not guessed again from the times on load;
+            // routes stored before it existed arrive the next day exactly when they arrive earlier in the day
+            new Migration(6, "arrival day offset of routes", List.of(
+                    "ALTER TABLE routes ADD COLUMN arrival_day_offset INTEGER NOT NULL DEFAULT 0",
+                    "UPDATE routes SET arrival_day_offset = 1 WHERE arrival_time < departure_time"))
+    );
+
+    public static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+
+    private SchemaMigrations() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            int version = migrate(ConnectionPool.getInstance());
+            System.out.println("Database schema is at version " + version);
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Brings the database up to {@link #LATEST_VERSION} and returns the resulting version.
+     * A database from a newer build is left untouched.
+     */
+    public static int migrate(ConnectionPool pool) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.write()) {
+            return migrate(conn);
+        }
+    }
+
+    /**
+     * {@link #migrate(ConnectionPool)} on a write connection the caller already holds
+     */
+    static int migrate(ConnectionPool.PooledConnection conn) throws SQLException {
+        int version = currentVersion(conn);
+        if (version > LATEST_VERSION) {
+            System.err.println("Warning: database schema version " + version
+                    + " is newer than this build (" + LATEST_VERSION + ")");
+            return version;
+        }
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= version) continue;
+
+            conn.connection().setAutoCommit(false);
+            try (Statement stmt = conn.connection().createStatement()) {
+                for (String sql : migration.statements()) {
+                    stmt.execute(sql);
+                }
+                stmt.execute("PRAGMA user_version = " + migration.version());
+            }
+            conn.connection().commit();
+            conn.connection().setAutoCommit(true);
+
+            version = migration.version();
+            System.out.println("✓ Schema migrated to version " + version + ": " + migration.description());
+        }
+        return version;
+    }
+
+    /**
+     * Schema version stored in the database; 0 for a new or never migrated file
+     */
+    public static int currentVersion(ConnectionPool.PooledConnection conn) throws SQLException {
+        PreparedStatement pstmt = conn.prepare("PRAGMA user_version");
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Clears the stored version, after the tables have been dropped for a full reload
+     */
+    static void reset(ConnectionPool.PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.connection().createStatement()) {
+            stmt.execute("PRAGMA user_version = 0");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package database;
+
+import model.RouteSnapshot;
+import model.RouteTable;
+import repositories.CSVRepository;
+import repositories.RouteRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the binary route snapshot that Main maps at startup.
+ * Without arguments the routes come from the SQLite database; with a CSV path they come from
+ * that file instead, and the snapshot is tied to the file's contents rather than to the
+ * database (Main will then treat it as stale and rebuild it from the database).
+ * Usage: SnapshotExport [csvPath] [snapshotPath]
+ */
+public class SnapshotExport {
+    private static final String DEFAULT_SNAPSHOT = "train_system.snapshot";
+
+    public static void main(String[] args) {
+        String csvPath = args.length > 0 ? args[0] : null;
+        Path target = Path.of(args.length > 1 ? args[1] : DEFAULT_SNAPSHOT);
+
+        try {
+            long started = System.nanoTime();
+            RouteTable table;
+            long fingerprint;
+            if (csvPath == null) {
+                RouteRepository routeRepo = RouteRepository.getInstance();
+                fingerprint = routeRepo.getFingerprint();
+                if (fingerprint == 0) {
+                    System.err.println("Routes table unavailable, nothing written.");
+                    return;
+                }
+                table = RouteTable.of(routeRepo.getRoutes());
+            } else {
+                fingerprint = fingerprintOf(Path.of(csvPath));
+                table = RouteTable.of(CSVRepository.getInstance().getRoutes(csvPath));
+            }
+
+            RouteSnapshot.write(table, fingerprint, target);
+            System.out.printf("Wrote %d routes to %s (%d KB) in %d ms%n", table.size(), target,
+                    Files.size(target) / 1024, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Snapshot error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * CRC32 of a source file's bytes, with its length in the upper half
+     */
+    static long fingerprintOf(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n; (n = in.read(chunk)) > 0; ) crc.update(chunk, 0, n);
+        }
+        return (Files.size(file) << 32) | crc.getValue();
+    }
+}
@@ -0,0 +1,93 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * SQLite settings applied to every pooled connection when it is opened.
+ * WAL journaling lets readers keep reading the last committed state while the booking writer
+ * appends to the log. The default, durable, syncs the log on every commit, so a booking reported
+ * as saved survives a power loss; the booking writer's group commit shares that sync between the
+ * bookings of a batch. wal skips the sync (synchronous=NORMAL: a power loss can lose the latest
+ * commits, but never corrupts the file) and suits read-mostly tools such as the CSV import.
+ * Selected with -Ddb.profile=durable|wal|defaults.
+ */
+public enum StorageProfile {
+    /**
+     * WAL, synchronous=NORMAL, 64 MiB page cache, 256 MiB memory map, temporary tables in memory;
+     * commits are not synced to disk
+     */
+    WAL("WAL", "NORMAL", -64 * 1024, 256L << 20, "MEMORY"),
+    /**
+     * Like {@link #WAL} but every commit is synced to disk; the default
+     */
+    DURABLE("WAL", "FULL", -64 * 1024, 256L << 20, "MEMORY"),
+    /**
+     * SQLite's own defaults: rollback journal, full sync, 2 MiB cache, no memory map
+     */
+    DEFAULTS("DELETE", "FULL", -2000, 0, "DEFAULT");
+
+    /**
+     * How long a connection waits for a lock held by another process before failing with SQLITE_BUSY
+     */
+    public static final int BUSY_TIMEOUT_MILLIS = 5_000;
+
+    static final String SYNCHRONOUS_FULL = "PRAGMA synchronous = FULL";
+
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+    private final String tempStore;
+
+    StorageProfile(String journalMode, String synchronous, int cacheSize, long mmapSize, String tempStore) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+    }
+
+    public static StorageProfile fromSystemProperty() {
+        String name = System.getProperty("db.profile", DURABLE.name());
+        for (StorageProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name)) return profile;
+        }
+        System.err.println("Unknown db.profile '" + name + "', using " + DURABLE.name().toLowerCase());
+        return DURABLE;
+    }
+
+    /**
+     * Whether every commit waits until it is on disk
+     */
+    public boolean syncsEveryCommit() {
+        return synchronous.equals("FULL");
+    }
+
+    String synchronousPragma() {
+        return "PRAGMA synchronous = " + synchronous;
+    }
+
+    /**
+     * The PRAGMA statements of this profile, in the order they are applied
+     */
+    public List<String> pragmas() {
+        return List.of(
+                "PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS,
+                "PRAGMA journal_mode = " + journalMode,
+                synchronousPragma(),
+                "PRAGMA cache_size = " + cacheSize,
+                "PRAGMA mmap_size = " + mmapSize,
+                "PRAGMA temp_store = " + tempStore);
+    }
+
+    void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : pragmas()) {
+                stmt.execute(pragma);
+            }
+        }
+    }
+}
@@ -2,35 +2,36 @@ package model;
 
 import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.util.HashSet;
 import java.util.stream.Collectors;
 
 public class Connection {
     private final Record record;
 
     public Connection(Record record) { this.record = record; }
+    public String routeId()   { return record.getRouteId(); }
     public String from()      { return record.getDepartureCity(); }
     public String to()        { return record.getArrivalCity(); }
     public LocalTime depTime(){ return record.getDepartureTime(); }
     public LocalTime arrTime(){ return record.getArrivalTime(); }
+    public int arrivalDayOffset() { return record.getArrivalDayOffset(); }
+    public int durationMinutes() { return record.getDurationMinutes(); }
     public double firstRate() { return record.getFirstClassRate(); }
     public double secondRate(){ return record.getSecondClassRate(); }
-    public HashSet<DayOfWeek> daysOfOperation() { return record.getDaysOfOperation(); }
+    public DayMask daysOfOperation() { return record.getDaysOfOperation(); }
     public String trainType() { return record.getTrainType(); }
 
     /**
      * Formats days of operation for display
      */
     public String formatDaysOfOperation() {
-        HashSet<DayOfWeek> days = daysOfOperation();
+        DayMask days = daysOfOperation();
 
-        if (days.size() == 7) {
+        if (days.isDaily()) {
             return "Daily";
         }
 
-        // Convert to sorted list
-        return days.stream()
-                .sorted()
+        // Days come out in week order
+        return days.days().stream()
                 .map(this::formatDay)
                 .collect(Collectors.joining(", "));
     }
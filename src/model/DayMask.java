@@ -0,0 +1,106 @@
+package model;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Days of the week packed into the low 7 bits of an int, Monday being bit 0.
+ * All 128 values are created once and shared, so masks are compared and combined
+ * without allocating.
+ */
+public final class DayMask {
+    public static final int ALL_BITS = 0x7F;
+    private static final DayMask[] CACHE = new DayMask[ALL_BITS + 1];
+
+    static {
+        for (int bits = 0; bits <= ALL_BITS; bits++) CACHE[bits] = new DayMask(bits);
+    }
+
+    public static final DayMask NONE = CACHE[0];
+    public static final DayMask DAILY = CACHE[ALL_BITS];
+
+    private final int bits;
+
+    private DayMask(int bits) {
+        this.bits = bits;
+    }
+
+    public static DayMask of(int bits) {
+        return CACHE[bits & ALL_BITS];
+    }
+
+    public static DayMask of(DayOfWeek day) {
+        return CACHE[bit(day)];
+    }
+
+    public static DayMask of(Collection<DayOfWeek> days) {
+        int bits = 0;
+        for (DayOfWeek day : days) bits |= bit(day);
+        return CACHE[bits];
+    }
+
+    public static int bit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
+
+    /**
+     * Rotates a mask so that every day moves the given number of days later (earlier when negative)
+     */
+    public static int rotate(int bits, int days) {
+        int r = Math.floorMod(days, 7);
+        return ((bits << r) | (bits >>> (7 - r))) & ALL_BITS;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public boolean contains(DayOfWeek day) {
+        return (bits & bit(day)) != 0;
+    }
+
+    public int size() {
+        return Integer.bitCount(bits);
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    public boolean isDaily() {
+        return bits == ALL_BITS;
+    }
+
+    public DayMask and(DayMask other) {
+        return CACHE[bits & other.bits];
+    }
+
+    public boolean intersects(DayMask other) {
+        return (bits & other.bits) != 0;
+    }
+
+    /**
+     * The day after each day of this mask
+     */
+    public DayMask nextDay() {
+        return CACHE[rotate(bits, 1)];
+    }
+
+    /**
+     * Days in week order, Monday first
+     */
+    public List<DayOfWeek> days() {
+        List<DayOfWeek> days = new ArrayList<>(size());
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (contains(day)) days.add(day);
+        }
+        return days;
+    }
+
+    @Override
+    public String toString() {
+        return days().toString();
+    }
+}
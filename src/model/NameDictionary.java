@@ -0,0 +1,56 @@
+package model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Dictionary encoding of names such as cities and train types.
+ * Every distinct name gets a dense int id in order of first appearance. Names are compared on
+ * their canonical key, so "Zürich", "ZURICH" and " zurich " share one id; the spelling seen
+ * first is kept for display.
+ */
+public final class NameDictionary {
+    public static final int UNKNOWN = -1;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Canonical form of a name: accents removed, lower case, surrounding blanks ignored
+     */
+    public static String key(String name) {
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Id of a name, assigning the next free id when the name is new
+     */
+    public int intern(String name) {
+        return ids.computeIfAbsent(key(name), k -> {
+            names.add(name);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Id of a name, or {@link #UNKNOWN} when it was never interned
+     */
+    public int id(String name) {
+        return name == null ? UNKNOWN : ids.getOrDefault(key(name), UNKNOWN);
+    }
+
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,157 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+import static model.RouteSnapshot.*;
+
+/**
+ * {@link RouteStore} that reads every row straight from a buffer in the {@link RouteSnapshot}
+ * layout, either a memory-mapped snapshot file or a direct buffer. Rows live outside the Java
+ * heap and are paged in by the operating system; of the store itself only the city and train
+ * type dictionaries are kept on the heap. The search engines built over it still keep per-row
+ * structures of their own there (search postings, route id maps, sorted column copies), so the
+ * heap used by a loaded network still grows with the timetable, only less than with a
+ * {@link RouteTable}.
+ * Reads use absolute offsets and never move the buffer position, so one store can be shared
+ * by concurrent searches.
+ */
+public final class OffHeapRouteStore implements RouteStore {
+    private final ByteBuffer buf;
+    private final int rows;
+    private final int records;
+    private final int departureIndex;
+    private final int arrivalIndex;
+    private final NameDictionary cities = new NameDictionary();
+    private final NameDictionary trainTypes = new NameDictionary();
+
+    private OffHeapRouteStore(ByteBuffer buf) {
+        this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+        this.rows = buf.getInt(ROWS);
+        this.records = buf.getInt(RECORDS);
+        this.departureIndex = buf.getInt(DEPARTURE_INDEX);
+        this.arrivalIndex = buf.getInt(ARRIVAL_INDEX);
+        int cityCount = buf.getInt(CITIES);
+        int trainTypeCount = buf.getInt(TRAIN_TYPES);
+        for (int c = 0; c < cityCount; c++) cities.intern(string(buf, c));
+        for (int t = 0; t < trainTypeCount; t++) trainTypes.intern(string(buf, cityCount + t));
+    }
+
+    /**
+     * Serves a snapshot file in place, or returns null when {@link RouteSnapshot#map} rejects it
+     */
+    public static OffHeapRouteStore open(Path file, long expectedFingerprint) {
+        MappedByteBuffer mapped = RouteSnapshot.map(file, expectedFingerprint);
+        return mapped == null ? null : new OffHeapRouteStore(mapped);
+    }
+
+    /**
+     * Copies a heap table into a direct buffer
+     */
+    public static OffHeapRouteStore of(RouteTable table) {
+        return new OffHeapRouteStore(RouteSnapshot.encode(table, 0, ByteBuffer::allocateDirect));
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public int cityCount() {
+        return cities.size();
+    }
+
+    public int cityId(String name) {
+        return cities.id(name);
+    }
+
+    public String cityName(int id) {
+        return cities.name(id);
+    }
+
+    public int trainTypeCount() {
+        return trainTypes.size();
+    }
+
+    public int trainTypeId(String name) {
+        return trainTypes.id(name);
+    }
+
+    public String trainTypeName(int id) {
+        return trainTypes.name(id);
+    }
+
+    public String routeId(int row) {
+        return string(buf, buf.getInt(at(row) + ROUTE_ID));
+    }
+
+    public int departureCity(int row) {
+        return buf.getInt(at(row) + DEPARTURE_CITY);
+    }
+
+    public int arrivalCity(int row) {
+        return buf.getInt(at(row) + ARRIVAL_CITY);
+    }
+
+    public int departureMinute(int row) {
+        return buf.getShort(at(row) + DEPARTURE_MINUTE);
+    }
+
+    public int arrivalMinute(int row) {
+        return buf.getShort(at(row) + ARRIVAL_MINUTE);
+    }
+
+    public int arrivalDayOffset(int row) {
+        return buf.get(at(row) + ARRIVAL_DAY);
+    }
+
+    public int dayMask(int row) {
+        return buf.get(at(row) + DAY_MASK);
+    }
+
+    public int trainType(int row) {
+        return buf.getInt(at(row) + TRAIN_TYPE);
+    }
+
+    public int firstClassCents(int row) {
+        return buf.getInt(at(row) + FIRST_CLASS);
+    }
+
+    public int secondClassCents(int row) {
+        return buf.getInt(at(row) + SECOND_CLASS);
+    }
+
+    public int[] departuresFrom(int city) {
+        return group(departureIndex, city);
+    }
+
+    public int[] arrivalsAt(int city) {
+        return group(arrivalIndex, city);
+    }
+
+    /**
+     * Only the name dictionaries; the rows are off-heap (see {@link #offHeapBytes()})
+     */
+    public long estimatedBytes() {
+        return 64L * (cities.size() + trainTypes.size());
+    }
+
+    public long offHeapBytes() {
+        return buf.capacity();
+    }
+
+    private int at(int row) {
+        return records + RECORD_BYTES * row;
+    }
+
+    /**
+     * Rows of one city in a grouped index: int[cities + 1] offsets followed by the rows
+     */
+    private int[] group(int index, int city) {
+        int from = buf.getInt(index + Integer.BYTES * city);
+        int to = buf.getInt(index + Integer.BYTES * (city + 1));
+        int rowsAt = index + Integer.BYTES * (cities.size() + 1);
+        return ints(buf, rowsAt + Integer.BYTES * from, to - from);
+    }
+}
@@ -1,8 +1,6 @@
 package model;
 
-import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.util.HashSet;
 
 public class Record {
     private String routeId;
@@ -10,20 +8,34 @@ public class Record {
     private String arrivalCity;
     private LocalTime departureTime;
     private LocalTime arrivalTime;
+    private int arrivalDayOffset;
     private String trainType;
-    private HashSet<DayOfWeek> daysOfOperation;
+    private DayMask daysOfOperation;
     private double firstClassRate;
     private double secondClassRate;
 
     public Record(String routeId, String departureCity, String arrivalCity,
                   LocalTime departureTime, LocalTime arrivalTime,
-                  String trainType, HashSet<DayOfWeek> daysOfOperation,
+                  String trainType, DayMask daysOfOperation,
+                  double firstClassRate, double secondClassRate) {
+        this(routeId, departureCity, arrivalCity, departureTime, arrivalTime,
+                TimeUtils.overnightDays(departureTime, arrivalTime),
+                trainType, daysOfOperation, firstClassRate, secondClassRate);
+    }
+
+    /**
+     * @param arrivalDayOffset days after the departure day on which the route arrives
+     */
+    public Record(String routeId, String departureCity, String arrivalCity,
+                  LocalTime departureTime, LocalTime arrivalTime, int arrivalDayOffset,
+                  String trainType, DayMask daysOfOperation,
                   double firstClassRate, double secondClassRate) {
         this.routeId = routeId;
         this.departureCity = departureCity;
         this.arrivalCity = arrivalCity;
         this.departureTime = departureTime;
         this.arrivalTime = arrivalTime;
+        this.arrivalDayOffset = arrivalDayOffset;
         this.trainType = trainType;
         this.daysOfOperation = daysOfOperation;
         this.firstClassRate = firstClassRate;
@@ -57,7 +69,13 @@ public class Record {
         return departureTime;
     }
 
+    /**
+     * Moves the departure, keeping the offset of the arrival day in step: a route that now
+     * departs later in the day than it arrives runs overnight, one that no longer does stops
+     * doing so, and whole days beyond that are kept
+     */
     public void setDepartureTime(LocalTime departureTime) {
+        this.arrivalDayOffset = shiftedDayOffset(departureTime, arrivalTime);
         this.departureTime = departureTime;
     }
 
@@ -65,10 +83,46 @@ public class Record {
         return arrivalTime;
     }
 
+    /**
+     * Moves the arrival, keeping the offset of the arrival day in step as
+     * {@link #setDepartureTime} does
+     */
     public void setArrivalTime(LocalTime arrivalTime) {
+        this.arrivalDayOffset = shiftedDayOffset(departureTime, arrivalTime);
         this.arrivalTime = arrivalTime;
     }
 
+    /**
+     * Moves the arrival to a time of day the given number of days after the departure day
+     */
+    public void setArrivalTime(LocalTime arrivalTime, int arrivalDayOffset) {
+        this.arrivalTime = arrivalTime;
+        this.arrivalDayOffset = arrivalDayOffset;
+    }
+
+    // Day offset once the times change: the days beyond the overnight rollover of the old times,
+    // plus the rollover of the new ones
+    private int shiftedDayOffset(LocalTime newDeparture, LocalTime newArrival) {
+        int extraDays = Math.max(0, arrivalDayOffset - TimeUtils.overnightDays(departureTime, arrivalTime));
+        return extraDays + TimeUtils.overnightDays(newDeparture, newArrival);
+    }
+
+    public int getArrivalDayOffset() {
+        return arrivalDayOffset;
+    }
+
+    public void setArrivalDayOffset(int arrivalDayOffset) {
+        this.arrivalDayOffset = arrivalDayOffset;
+    }
+
+    /**
+     * Running time in minutes, counting the days the route runs overnight
+     */
+    public int getDurationMinutes() {
+        return arrivalDayOffset * TimeUtils.MINUTES_PER_DAY
+                + TimeUtils.minuteOfDay(arrivalTime) - TimeUtils.minuteOfDay(departureTime);
+    }
+
     public String getTrainType() {
         return trainType;
     }
@@ -77,11 +131,11 @@ public class Record {
         this.trainType = trainType;
     }
 
-    public HashSet<DayOfWeek> getDaysOfOperation() {
+    public DayMask getDaysOfOperation() {
         return daysOfOperation;
     }
 
-    public void setDaysOfOperation(HashSet<DayOfWeek> daysOfOperation) {
+    public void setDaysOfOperation(DayMask daysOfOperation) {
         this.daysOfOperation = daysOfOperation;
     }
 
@@ -15,6 +15,7 @@ public class Reservation {
 
     public Traveller traveller() { return traveller; }
     public Connection connection() { return connection; }
+    public String routeId() { return connection.routeId(); }
     public Ticket ticket() { return ticket; }
 
     @Override public boolean equals(Object o) {
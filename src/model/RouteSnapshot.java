@@ -0,0 +1,269 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary image of a {@link RouteTable}, opened with {@link FileChannel#map}.
+ * Layout (little endian):
+ * <pre>
+ * header      64 bytes: magic, version, source fingerprint, CRC32 of everything after the header,
+ *             row/city/train type counts and the offsets of the sections below
+ * strings     int[count + 1] offsets into a UTF-8 blob; cities first, then train types, then route ids
+ * records     fixed-width rows of {@link #RECORD_BYTES} bytes
+ * departures  int[cities + 1] offsets and int[rows] rows, grouped by city in departure order
+ * arrivals    the same grouped by arrival city in arrival order
+ * </pre>
+ * The source fingerprint ties the file to the data it was written from, so a snapshot whose
+ * source has changed since is reported stale instead of being served.
+ */
+public final class RouteSnapshot {
+    public static final int MAGIC = 0x534E5452;
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 64;
+    public static final int RECORD_BYTES = 32;
+
+    // Header fields
+    static final int FINGERPRINT = 8;
+    static final int CHECKSUM = 16;
+    static final int ROWS = 24;
+    static final int CITIES = 28;
+    static final int TRAIN_TYPES = 32;
+    static final int STRING_INDEX = 36;
+    static final int STRING_DATA = 40;
+    static final int RECORDS = 44;
+    static final int DEPARTURE_INDEX = 48;
+    static final int ARRIVAL_INDEX = 52;
+    static final int LENGTH = 56;
+
+    // Record fields
+    static final int ROUTE_ID = 0;
+    static final int DEPARTURE_CITY = 4;
+    static final int ARRIVAL_CITY = 8;
+    static final int TRAIN_TYPE = 12;
+    static final int FIRST_CLASS = 16;
+    static final int SECOND_CLASS = 20;
+    static final int DEPARTURE_MINUTE = 24;
+    static final int ARRIVAL_MINUTE = 26;
+    static final int DAY_MASK = 28;
+    static final int ARRIVAL_DAY = 29;
+
+    private RouteSnapshot() {
+    }
+
+    /**
+     * Writes the table next to the target and moves it into place, so readers never see a partial file
+     */
+    public static void write(RouteTable table, long sourceFingerprint, Path file) throws IOException {
+        ByteBuffer buf = encode(table, sourceFingerprint, ByteBuffer::allocate);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lays the table out in the snapshot format in a buffer from the given allocator
+     */
+    static ByteBuffer encode(RouteTable table, long sourceFingerprint, IntFunction<ByteBuffer> allocator) {
+        int rows = table.size();
+        int cities = table.cityCount();
+        int trainTypes = table.trainTypeCount();
+
+        byte[][] strings = new byte[cities + trainTypes + rows][];
+        for (int c = 0; c < cities; c++) strings[c] = utf8(table.cityName(c));
+        for (int t = 0; t < trainTypes; t++) strings[cities + t] = utf8(table.trainTypeName(t));
+        for (int r = 0; r < rows; r++) strings[cities + trainTypes + r] = utf8(table.routeId(r));
+        int stringBytes = 0;
+        for (byte[] s : strings) stringBytes += s.length;
+
+        int stringIndex = HEADER_BYTES;
+        int stringData = stringIndex + Integer.BYTES * (strings.length + 1);
+        int records = align(stringData + stringBytes);
+        int departureIndex = records + RECORD_BYTES * rows;
+        int arrivalIndex = departureIndex + Integer.BYTES * (cities + 1 + rows);
+        int length = arrivalIndex + Integer.BYTES * (cities + 1 + rows);
+
+        ByteBuffer buf = allocator.apply(length).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putLong(FINGERPRINT, sourceFingerprint)
+                .putInt(ROWS, rows)
+                .putInt(CITIES, cities)
+                .putInt(TRAIN_TYPES, trainTypes)
+                .putInt(STRING_INDEX, stringIndex)
+                .putInt(STRING_DATA, stringData)
+                .putInt(RECORDS, records)
+                .putInt(DEPARTURE_INDEX, departureIndex)
+                .putInt(ARRIVAL_INDEX, arrivalIndex)
+                .putInt(LENGTH, length);
+
+        int at = 0;
+        for (int i = 0; i < strings.length; i++) {
+            buf.putInt(stringIndex + Integer.BYTES * i, at);
+            buf.put(stringData + at, strings[i]);
+            at += strings[i].length;
+        }
+        buf.putInt(stringIndex + Integer.BYTES * strings.length, at);
+
+        for (int r = 0; r < rows; r++) {
+            int base = records + RECORD_BYTES * r;
+            buf.putInt(base + ROUTE_ID, cities + trainTypes + r)
+                    .putInt(base + DEPARTURE_CITY, table.departureCity(r))
+                    .putInt(base + ARRIVAL_CITY, table.arrivalCity(r))
+                    .putInt(base + TRAIN_TYPE, table.trainType(r))
+                    .putInt(base + FIRST_CLASS, table.firstClassCents(r))
+                    .putInt(base + SECOND_CLASS, table.secondClassCents(r))
+                    .putShort(base + DEPARTURE_MINUTE, (short) table.departureMinute(r))
+                    .putShort(base + ARRIVAL_MINUTE, (short) table.arrivalMinute(r))
+                    .put(base + DAY_MASK, (byte) table.dayMask(r))
+                    .put(base + ARRIVAL_DAY, (byte) table.arrivalDayOffset(r));
+        }
+
+        putIndex(buf, departureIndex, table.departureOffsets, table.departureOrder);
+        putIndex(buf, arrivalIndex, table.arrivalOffsets, table.arrivalOrder);
+        buf.putLong(CHECKSUM, checksum(buf, length));
+        return buf;
+    }
+
+    /**
+     * Maps a snapshot read-only and checks it: returns null when the file is missing, was written
+     * from a different source than expectedFingerprint, or fails its format or checksum checks
+     */
+    public static MappedByteBuffer map(Path file, long expectedFingerprint) {
+        MappedByteBuffer buf;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_BYTES) {
+                System.err.println("Route snapshot " + file + " is truncated");
+                return null;
+            }
+            buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error opening route snapshot: " + e.getMessage());
+            return null;
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            System.err.println("Route snapshot " + file + " has an unsupported format");
+            return null;
+        }
+        if (buf.getLong(FINGERPRINT) != expectedFingerprint) {
+            return null;
+        }
+        if (buf.getInt(LENGTH) != buf.capacity() || buf.getLong(CHECKSUM) != checksum(buf, buf.capacity())) {
+            System.err.println("Route snapshot " + file + " is corrupt");
+            return null;
+        }
+        return buf;
+    }
+
+    /**
+     * Loads a snapshot into a heap {@link RouteTable}, or returns null under the conditions of {@link #map}.
+     * To serve the mapped file without copying it, see {@link OffHeapRouteStore#open}.
+     */
+    public static RouteTable read(Path file, long expectedFingerprint) {
+        MappedByteBuffer buf = map(file, expectedFingerprint);
+        return buf == null ? null : decode(buf);
+    }
+
+    private static RouteTable decode(ByteBuffer buf) {
+        int rows = buf.getInt(ROWS);
+        int cities = buf.getInt(CITIES);
+        int trainTypes = buf.getInt(TRAIN_TYPES);
+        int records = buf.getInt(RECORDS);
+
+        NameDictionary cityNames = new NameDictionary();
+        for (int c = 0; c < cities; c++) cityNames.intern(string(buf, c));
+        NameDictionary trainTypeNames = new NameDictionary();
+        for (int t = 0; t < trainTypes; t++) trainTypeNames.intern(string(buf, cities + t));
+
+        String[] routeIds = new String[rows];
+        int[] departureCity = new int[rows];
+        int[] arrivalCity = new int[rows];
+        short[] departureMinute = new short[rows];
+        short[] arrivalMinute = new short[rows];
+        byte[] arrivalDay = new byte[rows];
+        byte[] dayMask = new byte[rows];
+        int[] trainType = new int[rows];
+        int[] firstClassCents = new int[rows];
+        int[] secondClassCents = new int[rows];
+
+        for (int r = 0; r < rows; r++) {
+            int base = records + RECORD_BYTES * r;
+            routeIds[r] = string(buf, buf.getInt(base + ROUTE_ID));
+            departureCity[r] = buf.getInt(base + DEPARTURE_CITY);
+            arrivalCity[r] = buf.getInt(base + ARRIVAL_CITY);
+            trainType[r] = buf.getInt(base + TRAIN_TYPE);
+            firstClassCents[r] = buf.getInt(base + FIRST_CLASS);
+            secondClassCents[r] = buf.getInt(base + SECOND_CLASS);
+            departureMinute[r] = buf.getShort(base + DEPARTURE_MINUTE);
+            arrivalMinute[r] = buf.getShort(base + ARRIVAL_MINUTE);
+            dayMask[r] = buf.get(base + DAY_MASK);
+            arrivalDay[r] = buf.get(base + ARRIVAL_DAY);
+        }
+
+        int departureIndex = buf.getInt(DEPARTURE_INDEX);
+        int arrivalIndex = buf.getInt(ARRIVAL_INDEX);
+        return new RouteTable(cityNames, trainTypeNames, routeIds, departureCity, arrivalCity,
+                departureMinute, arrivalMinute, arrivalDay, dayMask, trainType, firstClassCents, secondClassCents,
+                ints(buf, departureIndex, cities + 1),
+                ints(buf, departureIndex + Integer.BYTES * (cities + 1), rows),
+                ints(buf, arrivalIndex, cities + 1),
+                ints(buf, arrivalIndex + Integer.BYTES * (cities + 1), rows));
+    }
+
+    /**
+     * String number i of the string table
+     */
+    static String string(ByteBuffer buf, int i) {
+        int index = buf.getInt(STRING_INDEX) + Integer.BYTES * i;
+        int from = buf.getInt(index);
+        int to = buf.getInt(index + Integer.BYTES);
+        byte[] bytes = new byte[to - from];
+        buf.get(buf.getInt(STRING_DATA) + from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int[] ints(ByteBuffer buf, int offset, int count) {
+        int[] values = new int[count];
+        buf.slice(offset, Integer.BYTES * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static void putIndex(ByteBuffer buf, int offset, int[] offsets, int[] order) {
+        buf.slice(offset, Integer.BYTES * offsets.length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(offsets);
+        buf.slice(offset + Integer.BYTES * offsets.length, Integer.BYTES * order.length)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(order);
+    }
+
+    private static long checksum(ByteBuffer buf, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(HEADER_BYTES, length - HEADER_BYTES));
+        return crc.getValue();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
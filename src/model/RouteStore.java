@@ -0,0 +1,121 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read access to the loaded network, one route per row.
+ * Exposes every field of {@link Record} as primitives: cities and train types as dense ids,
+ * times as minutes of the day, days of operation as a 7-bit mask and fares as euro cents.
+ * {@link RouteTable} keeps the rows on the heap; {@link OffHeapRouteStore} reads them from a
+ * mapped snapshot file or a direct buffer.
+ */
+public interface RouteStore {
+    int UNKNOWN = NameDictionary.UNKNOWN;
+
+    int size();
+
+    int cityCount();
+
+    /**
+     * Dense id of a city name, or {@link #UNKNOWN}
+     */
+    int cityId(String name);
+
+    String cityName(int id);
+
+    int trainTypeCount();
+
+    /**
+     * Dense id of a train type, or {@link #UNKNOWN}
+     */
+    int trainTypeId(String name);
+
+    String trainTypeName(int id);
+
+    String routeId(int row);
+
+    int departureCity(int row);
+
+    int arrivalCity(int row);
+
+    int departureMinute(int row);
+
+    /**
+     * Minute of the day the route arrives, on its arrival day
+     */
+    int arrivalMinute(int row);
+
+    /**
+     * Days after the departure day on which the route arrives
+     */
+    int arrivalDayOffset(int row);
+
+    /**
+     * Arrival in minutes from the midnight of the departure day; past one day for overnight routes
+     */
+    default int arrivalOffset(int row) {
+        return arrivalDayOffset(row) * TimeUtils.MINUTES_PER_DAY + arrivalMinute(row);
+    }
+
+    default int durationMinutes(int row) {
+        return arrivalOffset(row) - departureMinute(row);
+    }
+
+    int dayMask(int row);
+
+    int trainType(int row);
+
+    int firstClassCents(int row);
+
+    int secondClassCents(int row);
+
+    /**
+     * Rows leaving a city, ordered by departure minute (ties by row)
+     */
+    int[] departuresFrom(int city);
+
+    /**
+     * Rows reaching a city, ordered by arrival minute (ties by row)
+     */
+    int[] arrivalsAt(int city);
+
+    /**
+     * Approximate heap footprint of the stored rows
+     */
+    long estimatedBytes();
+
+    /**
+     * Builds a {@link Record} for one row
+     */
+    default Record record(int row) {
+        return new Record(routeId(row),
+                cityName(departureCity(row)),
+                cityName(arrivalCity(row)),
+                TimeUtils.timeOfMinute(departureMinute(row)),
+                TimeUtils.timeOfMinute(arrivalMinute(row)),
+                arrivalDayOffset(row),
+                trainTypeName(trainType(row)),
+                DayMask.of(dayMask(row)),
+                firstClassCents(row) / 100.0,
+                secondClassCents(row) / 100.0);
+    }
+
+    /**
+     * Builds {@link Record}s for every row, in row order
+     */
+    default List<Record> records() {
+        List<Record> records = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) records.add(record(i));
+        return records;
+    }
+
+    /**
+     * Converts a fare in euros to the highest number of cents it does not exceed
+     * (fares in the data have at most two decimals), so that row fares and price limits
+     * compare the same way they do as doubles
+     */
+    static long centsFloor(double euros) {
+        return (long) Math.floor(euros * 100 + 1e-6);
+    }
+}
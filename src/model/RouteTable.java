@@ -0,0 +1,361 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The loaded network stored column by column.
+ * Row i of every array describes route i. Cities and train types are replaced by dense ids
+ * from a {@link NameDictionary}, times by minutes of the day (arrivals with a day offset for
+ * overnight routes, see {@link TimeUtils}), days of operation by a 7-bit
+ * mask and fares by euro cents, so searches run over primitive arrays. {@link Record} objects
+ * are only created on demand through {@link #record(int)}, for display and booking.
+ * The rows leaving and reaching each city are also kept in time order, which is what the
+ * departure boards of the search engines are built from.
+ */
+public final class RouteTable implements RouteStore {
+    final String[] routeIds;
+    final int[] departureCity;
+    final int[] arrivalCity;
+    final short[] departureMinute;
+    final short[] arrivalMinute;
+    final byte[] arrivalDay;
+    final byte[] dayMask;
+    final int[] trainType;
+    final int[] firstClassCents;
+    final int[] secondClassCents;
+
+    final NameDictionary cities;
+    final NameDictionary trainTypes;
+
+    // Rows grouped by city (offsets has cityCount + 1 entries), by time within a city
+    final int[] departureOffsets;
+    final int[] departureOrder;
+    final int[] arrivalOffsets;
+    final int[] arrivalOrder;
+
+    RouteTable(NameDictionary cities, NameDictionary trainTypes, String[] routeIds,
+               int[] departureCity, int[] arrivalCity, short[] departureMinute, short[] arrivalMinute,
+               byte[] arrivalDay, byte[] dayMask, int[] trainType, int[] firstClassCents, int[] secondClassCents,
+               int[] departureOffsets, int[] departureOrder, int[] arrivalOffsets, int[] arrivalOrder) {
+        this.cities = cities;
+        this.trainTypes = trainTypes;
+        this.routeIds = routeIds;
+        this.departureCity = departureCity;
+        this.arrivalCity = arrivalCity;
+        this.departureMinute = departureMinute;
+        this.arrivalMinute = arrivalMinute;
+        this.arrivalDay = arrivalDay;
+        this.dayMask = dayMask;
+        this.trainType = trainType;
+        this.firstClassCents = firstClassCents;
+        this.secondClassCents = secondClassCents;
+        this.departureOffsets = departureOffsets;
+        this.departureOrder = departureOrder;
+        this.arrivalOffsets = arrivalOffsets;
+        this.arrivalOrder = arrivalOrder;
+    }
+
+    public static RouteTable of(List<Record> records) {
+        int n = records.size();
+        NameDictionary cities = new NameDictionary();
+        NameDictionary trainTypes = new NameDictionary();
+        String[] routeIds = new String[n];
+        int[] departureCity = new int[n];
+        int[] arrivalCity = new int[n];
+        short[] departureMinute = new short[n];
+        short[] arrivalMinute = new short[n];
+        byte[] arrivalDay = new byte[n];
+        byte[] dayMask = new byte[n];
+        int[] trainType = new int[n];
+        int[] firstClassCents = new int[n];
+        int[] secondClassCents = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            Record r = records.get(i);
+            routeIds[i] = r.getRouteId();
+            departureCity[i] = cities.intern(r.getDepartureCity());
+            arrivalCity[i] = cities.intern(r.getArrivalCity());
+            departureMinute[i] = (short) TimeUtils.minuteOfDay(r.getDepartureTime());
+            arrivalMinute[i] = (short) TimeUtils.minuteOfDay(r.getArrivalTime());
+            arrivalDay[i] = (byte) r.getArrivalDayOffset();
+            dayMask[i] = (byte) r.getDaysOfOperation().bits();
+            trainType[i] = trainTypes.intern(r.getTrainType());
+            firstClassCents[i] = toCents(r.getFirstClassRate());
+            secondClassCents[i] = toCents(r.getSecondClassRate());
+        }
+
+        int[] departureOffsets = new int[cities.size() + 1];
+        int[] arrivalOffsets = new int[cities.size() + 1];
+        int[] departureOrder = groupByCity(departureCity, departureMinute, departureOffsets);
+        int[] arrivalOrder = groupByCity(arrivalCity, arrivalMinute, arrivalOffsets);
+        return new RouteTable(cities, trainTypes, routeIds, departureCity, arrivalCity,
+                departureMinute, arrivalMinute, arrivalDay, dayMask, trainType, firstClassCents, secondClassCents,
+                departureOffsets, departureOrder, arrivalOffsets, arrivalOrder);
+    }
+
+    /**
+     * A table with changed routes applied, and what the change touched
+     *
+     * @param touchedCities cities whose departures or arrivals differ from the old table
+     * @param changedRows rows whose route differs from the same row of the old table
+     */
+    public record Patch(RouteTable table, BitSet touchedCities, BitSet changedRows) {
+    }
+
+    /**
+     * Applies added, updated and removed routes to a loaded network, copying the unchanged rows
+     * column by column instead of loading them again. An updated route keeps its row and new
+     * routes are appended; a removed route's row is filled with the last row. Every other row
+     * keeps its number, so structures built per city only need rebuilding for the touched cities.
+     */
+    public static Patch patch(RouteStore base, List<Record> changed, Collection<String> removed) {
+        Columns columns = new Columns(base, base.size() + changed.size());
+        BitSet touchedCities = new BitSet();
+        BitSet changedRows = new BitSet();
+        Map<String, Integer> rowOf = new HashMap<>(base.size() * 4 / 3 + 1);
+        for (int row = 0; row < base.size(); row++) rowOf.put(base.routeId(row), row);
+
+        int size = base.size();
+        int[] removedRows = removed.stream().map(rowOf::get).filter(Objects::nonNull)
+                .mapToInt(Integer::intValue).sorted().toArray();
+        // Highest row first, so the last row is never one that is still to be removed
+        for (int i = removedRows.length - 1; i >= 0; i--) {
+            int row = removedRows[i];
+            columns.touch(row, touchedCities);
+            rowOf.remove(columns.routeIds[row]);
+            int last = --size;
+            if (row != last) {
+                columns.move(last, row);
+                columns.touch(row, touchedCities);
+                rowOf.put(columns.routeIds[row], row);
+                changedRows.set(row);
+            }
+        }
+        changedRows.clear(size, base.size());
+
+        for (Record record : changed) {
+            Integer existing = rowOf.get(record.getRouteId());
+            int row;
+            if (existing != null) {
+                row = existing;
+                columns.touch(row, touchedCities);
+            } else {
+                row = size++;
+                rowOf.put(record.getRouteId(), row);
+            }
+            columns.set(row, record);
+            columns.touch(row, touchedCities);
+            changedRows.set(row);
+        }
+
+        return new Patch(columns.build(size), touchedCities, changedRows);
+    }
+
+    public int size() {
+        return routeIds.length;
+    }
+
+    public int cityCount() {
+        return cities.size();
+    }
+
+    public int cityId(String name) {
+        return cities.id(name);
+    }
+
+    public String cityName(int id) {
+        return cities.name(id);
+    }
+
+    public int trainTypeCount() {
+        return trainTypes.size();
+    }
+
+    public int trainTypeId(String name) {
+        return trainTypes.id(name);
+    }
+
+    public String trainTypeName(int id) {
+        return trainTypes.name(id);
+    }
+
+    public String routeId(int row) {
+        return routeIds[row];
+    }
+
+    public int departureCity(int row) {
+        return departureCity[row];
+    }
+
+    public int arrivalCity(int row) {
+        return arrivalCity[row];
+    }
+
+    public int departureMinute(int row) {
+        return departureMinute[row];
+    }
+
+    public int arrivalMinute(int row) {
+        return arrivalMinute[row];
+    }
+
+    public int arrivalDayOffset(int row) {
+        return arrivalDay[row];
+    }
+
+    public int dayMask(int row) {
+        return dayMask[row];
+    }
+
+    public int trainType(int row) {
+        return trainType[row];
+    }
+
+    public int firstClassCents(int row) {
+        return firstClassCents[row];
+    }
+
+    public int secondClassCents(int row) {
+        return secondClassCents[row];
+    }
+
+    public int[] departuresFrom(int city) {
+        return Arrays.copyOfRange(departureOrder, departureOffsets[city], departureOffsets[city + 1]);
+    }
+
+    public int[] arrivalsAt(int city) {
+        return Arrays.copyOfRange(arrivalOrder, arrivalOffsets[city], arrivalOffsets[city + 1]);
+    }
+
+    /**
+     * Columns and time-ordered indexes, not counting the name dictionaries
+     */
+    public long estimatedBytes() {
+        long perRow = Integer.BYTES * 7L + Short.BYTES * 2L + 2 + 8;
+        long routeIdChars = Arrays.stream(routeIds).mapToLong(id -> id == null ? 0 : 40 + id.length()).sum();
+        return perRow * size() + routeIdChars;
+    }
+
+    /**
+     * Growable copy of the columns of a store, for {@link #patch}
+     */
+    private static final class Columns {
+        final NameDictionary cities = new NameDictionary();
+        final NameDictionary trainTypes = new NameDictionary();
+        final String[] routeIds;
+        final int[] departureCity;
+        final int[] arrivalCity;
+        final short[] departureMinute;
+        final short[] arrivalMinute;
+        final byte[] arrivalDay;
+        final byte[] dayMask;
+        final int[] trainType;
+        final int[] firstClassCents;
+        final int[] secondClassCents;
+
+        Columns(RouteStore base, int capacity) {
+            // Interned in id order, so the existing ids stay the same
+            for (int c = 0; c < base.cityCount(); c++) cities.intern(base.cityName(c));
+            for (int t = 0; t < base.trainTypeCount(); t++) trainTypes.intern(base.trainTypeName(t));
+
+            routeIds = new String[capacity];
+            departureCity = new int[capacity];
+            arrivalCity = new int[capacity];
+            departureMinute = new short[capacity];
+            arrivalMinute = new short[capacity];
+            arrivalDay = new byte[capacity];
+            dayMask = new byte[capacity];
+            trainType = new int[capacity];
+            firstClassCents = new int[capacity];
+            secondClassCents = new int[capacity];
+            for (int i = 0; i < base.size(); i++) {
+                routeIds[i] = base.routeId(i);
+                departureCity[i] = base.departureCity(i);
+                arrivalCity[i] = base.arrivalCity(i);
+                departureMinute[i] = (short) base.departureMinute(i);
+                arrivalMinute[i] = (short) base.arrivalMinute(i);
+                arrivalDay[i] = (byte) base.arrivalDayOffset(i);
+                dayMask[i] = (byte) base.dayMask(i);
+                trainType[i] = base.trainType(i);
+                firstClassCents[i] = base.firstClassCents(i);
+                secondClassCents[i] = base.secondClassCents(i);
+            }
+        }
+
+        void set(int i, Record r) {
+            routeIds[i] = r.getRouteId();
+            departureCity[i] = cities.intern(r.getDepartureCity());
+            arrivalCity[i] = cities.intern(r.getArrivalCity());
+            departureMinute[i] = (short) TimeUtils.minuteOfDay(r.getDepartureTime());
+            arrivalMinute[i] = (short) TimeUtils.minuteOfDay(r.getArrivalTime());
+            arrivalDay[i] = (byte) r.getArrivalDayOffset();
+            dayMask[i] = (byte) r.getDaysOfOperation().bits();
+            trainType[i] = trainTypes.intern(r.getTrainType());
+            firstClassCents[i] = toCents(r.getFirstClassRate());
+            secondClassCents[i] = toCents(r.getSecondClassRate());
+        }
+
+        void move(int from, int to) {
+            routeIds[to] = routeIds[from];
+            departureCity[to] = departureCity[from];
+            arrivalCity[to] = arrivalCity[from];
+            departureMinute[to] = departureMinute[from];
+            arrivalMinute[to] = arrivalMinute[from];
+            arrivalDay[to] = arrivalDay[from];
+            dayMask[to] = dayMask[from];
+            trainType[to] = trainType[from];
+            firstClassCents[to] = firstClassCents[from];
+            secondClassCents[to] = secondClassCents[from];
+        }
+
+        void touch(int i, BitSet touchedCities) {
+            touchedCities.set(departureCity[i]);
+            touchedCities.set(arrivalCity[i]);
+        }
+
+        RouteTable build(int n) {
+            int[] departureCity = Arrays.copyOf(this.departureCity, n);
+            int[] arrivalCity = Arrays.copyOf(this.arrivalCity, n);
+            short[] departureMinute = Arrays.copyOf(this.departureMinute, n);
+            short[] arrivalMinute = Arrays.copyOf(this.arrivalMinute, n);
+            int[] departureOffsets = new int[cities.size() + 1];
+            int[] arrivalOffsets = new int[cities.size() + 1];
+            int[] departureOrder = groupByCity(departureCity, departureMinute, departureOffsets);
+            int[] arrivalOrder = groupByCity(arrivalCity, arrivalMinute, arrivalOffsets);
+            return new RouteTable(cities, trainTypes, Arrays.copyOf(routeIds, n), departureCity, arrivalCity,
+                    departureMinute, arrivalMinute, Arrays.copyOf(arrivalDay, n), Arrays.copyOf(dayMask, n),
+                    Arrays.copyOf(trainType, n), Arrays.copyOf(firstClassCents, n), Arrays.copyOf(secondClassCents, n),
+                    departureOffsets, departureOrder, arrivalOffsets, arrivalOrder);
+        }
+    }
+
+    private static int toCents(double euros) {
+        return (int) Math.round(euros * 100);
+    }
+
+    /**
+     * Counting sort of the rows by city, stable on (minute, row) inside each city; fills offsets
+     */
+    private static int[] groupByCity(int[] city, short[] minute, int[] offsets) {
+        int n = city.length;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) packed[i] = ((long) minute[i] << 32) | i;
+        Arrays.sort(packed);
+
+        for (int c : city) offsets[c + 1]++;
+        for (int c = 0; c + 1 < offsets.length; c++) offsets[c + 1] += offsets[c];
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        int[] order = new int[n];
+        for (long p : packed) {
+            int row = (int) p;
+            order[next[city[row]]++] = row;
+        }
+        return order;
+    }
+}
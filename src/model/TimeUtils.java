@@ -1,11 +1,53 @@
 package model;
 
-import java.time.Duration;
 import java.time.LocalTime;
 
+/**
+ * Integer timeline shared by the search engines.
+ * A leg departs at a minute of the day and arrives a whole number of days later (0 for most
+ * legs, 1 for overnight trains) at another minute of the day, so its arrival is an offset from
+ * the midnight of its departure day that may exceed one day. Along a journey every time is
+ * counted from the midnight of the day the journey starts; the day a leg departs on is that
+ * clock divided by {@link #MINUTES_PER_DAY}, which is also how far the operating days of the
+ * leg are rotated against the weekday the journey starts on. Transfers are plain subtraction.
+ */
 public class TimeUtils {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Minutes from a time of day to the next occurrence of another (0 when equal)
+     */
     public static long minutesBetween(LocalTime a, LocalTime b) {
-        long m = Duration.between(a, b).toMinutes();
-        return m >= 0 ? m : m + 24 * 60;
+        return waitMinutes(minuteOfDay(a), minuteOfDay(b));
+    }
+
+    /**
+     * Minutes from a minute of the day to the next occurrence of another (0 when equal)
+     */
+    public static int waitMinutes(int fromMinuteOfDay, int toMinuteOfDay) {
+        return Math.floorMod(toMinuteOfDay - fromMinuteOfDay, MINUTES_PER_DAY);
+    }
+
+    /**
+     * Whole days between the start of the timeline and the given clock
+     */
+    public static int dayOf(long clock) {
+        return (int) Math.floorDiv(clock, MINUTES_PER_DAY);
+    }
+
+    /**
+     * Days after its departure day on which a leg arrives, when the timetable does not say:
+     * a leg arriving at an earlier time of day than it departed runs overnight
+     */
+    public static int overnightDays(LocalTime departure, LocalTime arrival) {
+        return arrival.isBefore(departure) ? 1 : 0;
+    }
+
+    public static int minuteOfDay(LocalTime t) {
+        return t.toSecondOfDay() / 60;
+    }
+
+    public static LocalTime timeOfMinute(int minuteOfDay) {
+        return LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
     }
 }
@@ -0,0 +1,41 @@
+package parsers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits one CSV line into fields in a single pass over its characters.
+ * Commas inside double quotes do not separate fields; the quotes around a field are removed
+ * and a doubled quote inside one becomes a single quote. Empty fields are kept.
+ */
+public final class CsvLineParser {
+
+    private CsvLineParser() {
+    }
+
+    public static String[] split(String line) {
+        List<String> fields = new ArrayList<>(16);
+        StringBuilder field = new StringBuilder(32);
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        return fields.toArray(new String[0]);
+    }
+}
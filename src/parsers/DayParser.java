@@ -1,8 +1,9 @@
 package parsers;
 
 
+import model.DayMask;
+
 import java.time.DayOfWeek;
-import java.util.HashSet;
 
 public class DayParser {
     private volatile static DayParser instance;
@@ -18,14 +19,11 @@ public class DayParser {
         }
         return instance;
     }
-    public HashSet<DayOfWeek> parseDays(String s) {
-        HashSet<DayOfWeek> days = new HashSet<>();
+    public DayMask parseDays(String s) {
         if (s.equals("Daily")) {
-            for (DayOfWeek day : DayOfWeek.values()) {
-                days.add(day);
-            }
-            return days;
+            return DayMask.DAILY;
         }
+        int days = 0;
         String[] parts = s.split(",");
         for (String part : parts) {
             part = part.trim();
@@ -38,16 +36,16 @@ public class DayParser {
                     int endVal = end.getValue();
                     int i = startVal;
                     do {
-                        days.add(DayOfWeek.of(i));
+                        days |= DayMask.bit(DayOfWeek.of(i));
                         i = i % 7 + 1;
                     } while (i != endVal % 7 + 1);
                 }
             } else {
                 DayOfWeek day = parseDOW(part);
-                if (day != null) days.add(day);
+                if (day != null) days |= DayMask.bit(day);
             }
         }
-        return days;
+        return DayMask.of(days);
     }
 
     private DayOfWeek parseDOW(String s) {
@@ -1,6 +1,7 @@
 package repositories;
 
 import model.Record;
+import parsers.CsvLineParser;
 import parsers.DayParser;
 
 import java.io.BufferedReader;
@@ -10,11 +11,14 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 
 public class CSVRepository {
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final Pattern TIME_CELL = Pattern.compile("(\\d{2}:\\d{2})(?:\\s*\\(\\+(\\d+)d\\))?");
     private volatile static CSVRepository instance;
     private DayParser dayParser;
 
@@ -45,16 +49,17 @@ public class CSVRepository {
 
             String line = null;
             while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+                String[] values = CsvLineParser.split(line);
 //                System.out.println(values[6].trim());
                 Record route = new Record(
                         values[0].trim(),
                         values[1].trim(),
                         values[2].trim(),
                         LocalTime.parse(values[3].trim(), TIME_FMT),
-                        values[4].trim().contains("(+1d)") ? LocalTime.parse(values[4].trim().replace(" (+1d)", ""), TIME_FMT) .plusHours(24) : LocalTime.parse(values[4].trim()), // check moi un fou one liner
+                        parseTime(values[4]),
+                        parseDayOffset(values[4]),
                         values[5].trim(),
-                        dayParser.parseDays(values[6].replaceAll("^\"|\"$", "")),
+                        dayParser.parseDays(values[6]),
                         Double.parseDouble(values[7].trim()),
                         Double.parseDouble(values[8].trim()));
 
@@ -66,4 +71,23 @@ public class CSVRepository {
 
         return routes;
     }
+
+    /**
+     * Time of day of a timetable cell such as "08:08" or "08:08 (+1d)"
+     */
+    private static LocalTime parseTime(String value) {
+        Matcher m = TIME_CELL.matcher(value.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+        return LocalTime.parse(m.group(1), TIME_FMT);
+    }
+
+    /**
+     * Day offset of a timetable cell: N for "(+Nd)", 0 when absent
+     */
+    private static int parseDayOffset(String value) {
+        Matcher m = TIME_CELL.matcher(value.trim());
+        return m.matches() && m.group(2) != null ? Integer.parseInt(m.group(2)) : 0;
+    }
 }
@@ -1,11 +1,12 @@
 package repositories;
 
 import model.Traveller;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ClientRepository {
-    private final Set<Traveller> clients = new HashSet<>();
+    // Bookings can be made from several threads
+    private final Set<Traveller> clients = ConcurrentHashMap.newKeySet();
 
     public void save(Traveller t) {
         clients.add(t);
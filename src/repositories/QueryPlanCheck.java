@@ -0,0 +1,99 @@
+package repositories;
+
+import database.ConnectionPool;
+import database.SchemaMigrations;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every repository lookup and reports those that scan a table
+ * instead of searching an index. Exits with status 1 when any lookup scans, so it can guard
+ * schema and query changes: {@code java -cp bin repositories.QueryPlanCheck}.
+ * Whole-table reads (loading every route, counts) and the sqlite_sequence lookup of the routes version
+ * (one row per table) scan by design and are not listed.
+ */
+public class QueryPlanCheck {
+
+    /**
+     * A repository statement; an ordered index walk is accepted when indexScanAllowed,
+     * for statements that read a limited page in index order
+     */
+    private record Query(String name, String sql, boolean indexScanAllowed) {
+    }
+
+    private static final List<Query> QUERIES = List.of(
+            new Query("RouteRepository.findByDepartureCity", RouteRepository.FIND_BY_DEPARTURE_CITY, false),
+            new Query("RouteRepository.findByArrivalCity", RouteRepository.FIND_BY_ARRIVAL_CITY, false),
+            new Query("RouteRepository.findByRouteId", RouteRepository.FIND_BY_ROUTE_ID, false),
+            new Query("RouteRepository.getOldestChangeId", RouteRepository.OLDEST_ROUTE_CHANGE, false),
+            new Query("RouteRepository.pruneChanges", RouteRepository.PRUNE_ROUTE_CHANGES, false),
+            new Query("RouteRepository.findChanges", RouteRepository.FIND_ROUTE_CHANGES, false),
+            new Query("TripDatabaseRepository.loadTrips", TripDatabaseRepository.LOAD_TRIPS_PAGE, true),
+            new Query("TripDatabaseRepository.loadTripById", TripDatabaseRepository.LOAD_TRIP_BY_ID, false),
+            new Query("TripDatabaseRepository.findTripsByTraveller", TripDatabaseRepository.FIND_TRIPS_BY_TRAVELLER, false),
+            new Query("TripDatabaseRepository.deleteTrip (reservations)", TripDatabaseRepository.DELETE_RESERVATIONS, false),
+            new Query("TripDatabaseRepository.deleteTrip (trips)", TripDatabaseRepository.DELETE_TRIP, false),
+            new Query("TripDatabaseRepository.findMatchingRouteId", TripDatabaseRepository.FIND_MATCHING_ROUTE, false)
+    );
+
+    public static void main(String[] args) {
+        ConnectionPool pool = ConnectionPool.getInstance();
+        try {
+            SchemaMigrations.migrate(pool);
+            List<String> scans = check(pool);
+            if (scans.isEmpty()) {
+                System.out.println("✓ All " + QUERIES.size() + " repository lookups use an index");
+            } else {
+                System.err.println(scans.size() + " repository lookup(s) scan a table:");
+                scans.forEach(s -> System.err.println("  " + s));
+                System.exit(1);
+            }
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Prints the plan of every lookup and returns one line per table scan found
+     */
+    public static List<String> check(ConnectionPool pool) throws SQLException {
+        List<String> scans = new ArrayList<>();
+
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            for (Query query : QUERIES) {
+                System.out.println(query.name());
+                PreparedStatement pstmt = conn.prepare("EXPLAIN QUERY PLAN " + query.sql());
+                // Parameter values do not change the plan
+                int parameters = pstmt.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    pstmt.setNull(i, Types.NULL);
+                }
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String detail = rs.getString("detail");
+                        System.out.println("    " + detail);
+                        if (isScan(detail, query.indexScanAllowed())) {
+                            scans.add(query.name() + ": " + detail);
+                        }
+                    }
+                }
+            }
+        }
+
+        return scans;
+    }
+
+    private static boolean isScan(String detail, boolean indexScanAllowed) {
+        // "SCAN routes" (or "SCAN TABLE routes" before SQLite 3.36) reads every row;
+        // SEARCH steps and temporary b-trees for ORDER BY or DISTINCT are fine
+        if (!detail.startsWith("SCAN ")) return false;
+        return !(indexScanAllowed && detail.contains(" USING ") && detail.contains("INDEX"));
+    }
+}
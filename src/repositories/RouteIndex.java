@@ -0,0 +1,125 @@
+package repositories;
+
+import model.Record;
+import model.RouteStore;
+import model.TimeUtils;
+
+import java.time.LocalTime;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory lookups over the loaded route network, so that resolving a route by id or by its
+ * natural key (cities, departure time, train type and fares) does not query SQLite.
+ * Fares are compared in whole cents rather than as floating point values.
+ * The index is immutable; build a new one, or {@link #patched} one, when the network is reloaded.
+ */
+public final class RouteIndex {
+    private final RouteStore store;
+    private final Map<String, Integer> rowByRouteId;
+    private final Map<NaturalKey, Integer> rowByNaturalKey;
+    // Natural keys of more than one route, which a patch cannot drop without looking for the others
+    private final Set<NaturalKey> sharedKeys;
+
+    private record NaturalKey(int departureCity, int arrivalCity, int departureMinute,
+                              int trainType, long firstClassCents, long secondClassCents) {
+    }
+
+    public RouteIndex(RouteStore store) {
+        this.store = store;
+        int n = store.size();
+        this.rowByRouteId = new HashMap<>(n * 4 / 3 + 1);
+        this.rowByNaturalKey = new HashMap<>(n * 4 / 3 + 1);
+        this.sharedKeys = new HashSet<>();
+        for (int row = 0; row < n; row++) {
+            rowByRouteId.putIfAbsent(store.routeId(row), row);
+            // Like the SQL match, the first route with a given key wins
+            NaturalKey key = naturalKey(store, row);
+            if (rowByNaturalKey.putIfAbsent(key, row) != null) sharedKeys.add(key);
+        }
+    }
+
+    private RouteIndex(RouteStore store, Map<String, Integer> rowByRouteId,
+                       Map<NaturalKey, Integer> rowByNaturalKey, Set<NaturalKey> sharedKeys) {
+        this.store = store;
+        this.rowByRouteId = rowByRouteId;
+        this.rowByNaturalKey = rowByNaturalKey;
+        this.sharedKeys = sharedKeys;
+    }
+
+    /**
+     * An index over a store holding this store's rows with the changed rows replaced, and rows
+     * from its size on removed. Entries of unchanged rows are copied over instead of being read
+     * from the store again; when a changed row had a natural key shared with another route, the
+     * index is built from scratch instead.
+     */
+    public RouteIndex patched(RouteStore next, BitSet changedRows) {
+        BitSet dropped = (BitSet) changedRows.clone();
+        if (store.size() > next.size()) dropped.set(next.size(), store.size());
+        for (int row = dropped.nextSetBit(0); row >= 0 && row < store.size(); row = dropped.nextSetBit(row + 1)) {
+            if (sharedKeys.contains(naturalKey(store, row))) return new RouteIndex(next);
+        }
+
+        Map<String, Integer> ids = new HashMap<>(rowByRouteId);
+        Map<NaturalKey, Integer> keys = new HashMap<>(rowByNaturalKey);
+        Set<NaturalKey> shared = new HashSet<>(sharedKeys);
+        for (int row = dropped.nextSetBit(0); row >= 0 && row < store.size(); row = dropped.nextSetBit(row + 1)) {
+            ids.remove(store.routeId(row), row);
+            keys.remove(naturalKey(store, row), row);
+        }
+        for (int row = dropped.nextSetBit(0); row >= 0 && row < next.size(); row = dropped.nextSetBit(row + 1)) {
+            ids.putIfAbsent(next.routeId(row), row);
+            NaturalKey key = naturalKey(next, row);
+            Integer first = keys.putIfAbsent(key, row);
+            if (first != null) {
+                shared.add(key);
+                // Rows are patched in place, so the lower row still wins as in a full build
+                if (row < first) keys.put(key, row);
+            }
+        }
+        return new RouteIndex(next, ids, keys, shared);
+    }
+
+    private static NaturalKey naturalKey(RouteStore store, int row) {
+        return new NaturalKey(store.departureCity(row), store.arrivalCity(row),
+                store.departureMinute(row), store.trainType(row),
+                store.firstClassCents(row), store.secondClassCents(row));
+    }
+
+    public RouteStore store() {
+        return store;
+    }
+
+    /**
+     * The route with this id, or null
+     */
+    public Record findByRouteId(String routeId) {
+        Integer row = rowByRouteId.get(routeId);
+        return row == null ? null : store.record(row);
+    }
+
+    /**
+     * Id of the route with these attributes, or null when the network has none
+     */
+    public String findRouteId(String departureCity, String arrivalCity, LocalTime departureTime,
+                              String trainType, double firstClassRate, double secondClassRate) {
+        int from = store.cityId(departureCity);
+        int to = store.cityId(arrivalCity);
+        int type = store.trainTypeId(trainType);
+        if (from == RouteStore.UNKNOWN || to == RouteStore.UNKNOWN || type == RouteStore.UNKNOWN) {
+            return null;
+        }
+
+        Integer row = rowByNaturalKey.get(new NaturalKey(from, to, TimeUtils.minuteOfDay(departureTime), type,
+                Math.round(firstClassRate * 100), Math.round(secondClassRate * 100)));
+        return row == null ? null : store.routeId(row);
+    }
+
+    public String findRouteId(model.Connection connection) {
+        return findRouteId(connection.from(), connection.to(), connection.depTime(),
+                connection.trainType(), connection.firstRate(), connection.secondRate());
+    }
+}
@@ -1,41 +1,89 @@
 package repositories;
 
+import database.ConnectionPool;
+import model.DayMask;
 import model.Record;
 import parsers.DayParser;
 
 import java.sql.*;
-import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Database repository for managing routes (Records)
  * Replaces CSVRepository for database-based operations
  */
 public class RouteRepository {
-    private static final String DB_URL = "jdbc:sqlite:train_system.db";
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * Route id logged in route_changes when the whole routes table is replaced
+     */
+    public static final String ALL_ROUTES_CHANGED = "*";
+
+    // Lookups that must be served by an index, see QueryPlanCheck
+    static final String FIND_BY_DEPARTURE_CITY = "SELECT * FROM routes WHERE departure_city = ? ORDER BY departure_time";
+    static final String FIND_BY_ARRIVAL_CITY = "SELECT * FROM routes WHERE arrival_city = ? ORDER BY departure_time";
+    static final String FIND_BY_ROUTE_ID = "SELECT * FROM routes WHERE route_id = ?";
+    static final String OLDEST_ROUTE_CHANGE = "SELECT COALESCE(MIN(change_id), 0) FROM route_changes";
+    static final String PRUNE_ROUTE_CHANGES = "DELETE FROM route_changes WHERE change_id <= ?";
+    static final String ROUTES_VERSION = "SELECT seq FROM sqlite_sequence WHERE name = 'route_changes'";
+    static final String FIND_ROUTE_CHANGES = """
+            SELECT DISTINCT c.route_id AS changed_route_id, r.*
+            FROM route_changes c
+            LEFT JOIN routes r ON r.route_id = c.route_id
+            WHERE c.change_id > ? AND c.change_id <= ?
+            """;
+
     private volatile static RouteRepository instance;
     private final DayParser dayParser;
+    private final ConnectionPool pool;
+    private volatile Supplier<RouteIndex> index;
 
-    private RouteRepository(DayParser dayParser) {
+    private RouteRepository(DayParser dayParser, ConnectionPool pool) {
         this.dayParser = dayParser;
+        this.pool = pool;
     }
 
     public static RouteRepository getInstance() {
         if (instance == null) {
             synchronized (RouteRepository.class) {
                 if (instance == null) {
-                    instance = new RouteRepository(DayParser.getInstance());
+                    instance = new RouteRepository(DayParser.getInstance(), ConnectionPool.getInstance());
                 }
             }
         }
         return instance;
     }
 
+    /**
+     * Serves route lookups from the loaded network instead of SQLite; null goes back to SQL
+     */
+    public void useIndex(RouteIndex index) {
+        this.index = index == null ? null : () -> index;
+    }
+
+    /**
+     * Serves route lookups from whichever index the source currently returns, so the index can
+     * be replaced together with the network it belongs to
+     */
+    public void useIndex(Supplier<RouteIndex> source) {
+        this.index = source;
+    }
+
+    /**
+     * In-memory lookups over the loaded network, or null before one has been set
+     */
+    public RouteIndex index() {
+        Supplier<RouteIndex> source = index;
+        return source == null ? null : source.get();
+    }
+
     /**
      * Loads all routes from the database
      */
@@ -43,9 +91,8 @@ public class RouteRepository {
         List<Record> routes = new ArrayList<>();
         String query = "SELECT * FROM routes ORDER BY route_id";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             ResultSet rs = conn.prepare(query).executeQuery()) {
 
             while (rs.next()) {
                 routes.add(mapResultSetToRecord(rs));
@@ -63,11 +110,8 @@ public class RouteRepository {
      */
     public List<Record> findByDepartureCity(String city) {
         List<Record> routes = new ArrayList<>();
-        String query = "SELECT * FROM routes WHERE departure_city = ? ORDER BY departure_time";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(FIND_BY_DEPARTURE_CITY);
             pstmt.setString(1, city);
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -88,11 +132,8 @@ public class RouteRepository {
      */
     public List<Record> findByArrivalCity(String city) {
         List<Record> routes = new ArrayList<>();
-        String query = "SELECT * FROM routes WHERE arrival_city = ? ORDER BY departure_time";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(FIND_BY_ARRIVAL_CITY);
             pstmt.setString(1, city);
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -112,11 +153,13 @@ public class RouteRepository {
      * Finds a specific route by ID
      */
     public Record findByRouteId(String routeId) {
-        String query = "SELECT * FROM routes WHERE route_id = ?";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        RouteIndex index = index();
+        if (index != null) {
+            return index.findByRouteId(routeId);
+        }
 
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(FIND_BY_ROUTE_ID);
             pstmt.setString(1, routeId);
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -132,15 +175,106 @@ public class RouteRepository {
         return null;
     }
 
+    /**
+     * Routes added or updated, with their current values, and ids of the routes deleted.
+     * allRoutes is set when the log marks the whole table as replaced, e.g. by a CSV re-import.
+     */
+    public record RouteChanges(List<Record> changed, Set<String> removed, boolean allRoutes) {
+        public int size() {
+            return changed.size() + removed.size();
+        }
+    }
+
+    /**
+     * Last id handed out by the route change log, even when its entry has been pruned;
+     * 0 when none was, -1 when it cannot be read
+     */
+    public long getLatestChangeId() {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             ResultSet rs = conn.prepare(ROUTES_VERSION).executeQuery()) {
+
+            return rs.next() ? rs.getLong(1) : 0;
+
+        } catch (SQLException e) {
+            System.err.println("Error reading route changes: " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Id of the oldest entry still in the route change log; 0 when it is empty, -1 when it cannot be read
+     */
+    public long getOldestChangeId() {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             ResultSet rs = conn.prepare(OLDEST_ROUTE_CHANGE).executeQuery()) {
+
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error reading route changes: " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Deletes the route change log entries up to and including this id
+     */
+    public void pruneChanges(long upToChangeId) {
+        try (ConnectionPool.PooledConnection conn = pool.write()) {
+            PreparedStatement pstmt = conn.prepare(PRUNE_ROUTE_CHANGES);
+            pstmt.setLong(1, upToChangeId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error pruning route changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Current state of every route logged as changed after afterChangeId, up to and including
+     * upToChangeId; null when the changes cannot be read
+     */
+    public RouteChanges findChanges(long afterChangeId, long upToChangeId) {
+        List<Record> changed = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+        boolean allRoutes = false;
+
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(FIND_ROUTE_CHANGES);
+            pstmt.setLong(1, afterChangeId);
+            pstmt.setLong(2, upToChangeId);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String changedRouteId = rs.getString("changed_route_id");
+                    if (changedRouteId.equals(ALL_ROUTES_CHANGED)) {
+                        allRoutes = true;
+                    } else if (rs.getString("route_id") == null) {
+                        removed.add(changedRouteId);
+                    } else {
+                        changed.add(mapResultSetToRecord(rs));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading route changes: " + e.getMessage());
+            return null;
+        }
+
+        return new RouteChanges(changed, removed, allRoutes);
+    }
+
     /**
      * Gets total count of routes
      */
     public int getRouteCount() {
         String query = "SELECT COUNT(*) as count FROM routes";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             ResultSet rs = conn.prepare(query).executeQuery()) {
 
             if (rs.next()) {
                 return rs.getInt("count");
@@ -153,6 +287,16 @@ public class RouteRepository {
         return 0;
     }
 
+    /**
+     * Version token of the routes table: the last id handed out by the route change log, whose
+     * triggers fire on every insert, update and delete, so any edit to any route changes it.
+     * Each database starts its ids at a random point (schema migration 5), so a recreated file does
+     * not repeat the tokens of an earlier one. Returns 0 when the token cannot be read.
+     */
+    public long getFingerprint() {
+        return Math.max(getLatestChangeId(), 0);
+    }
+
     /**
      * Maps a ResultSet row to a Record object
      */
@@ -162,13 +306,14 @@ public class RouteRepository {
         String arrivalCity = rs.getString("arrival_city");
         LocalTime departureTime = LocalTime.parse(rs.getString("departure_time"), TIME_FMT);
         LocalTime arrivalTime = LocalTime.parse(rs.getString("arrival_time"), TIME_FMT);
+        int arrivalDayOffset = rs.getInt("arrival_day_offset");
         String trainType = rs.getString("train_type");
         String daysStr = rs.getString("days_of_operation");
-        HashSet<DayOfWeek> daysOfOperation = dayParser.parseDays(daysStr);
+        DayMask daysOfOperation = dayParser.parseDays(daysStr);
         double firstClassRate = rs.getDouble("first_class_rate");
         double secondClassRate = rs.getDouble("second_class_rate");
 
         return new Record(routeId, departureCity, arrivalCity, departureTime, arrivalTime,
-                trainType, daysOfOperation, firstClassRate, secondClassRate);
+                arrivalDayOffset, trainType, daysOfOperation, firstClassRate, secondClassRate);
     }
 }
@@ -5,7 +5,6 @@ import java.io.*;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import parsers.DayParser;
 
@@ -83,7 +82,7 @@ public class TripCSVRepository {
                 LocalTime depTime = LocalTime.parse(values[8].trim(), TIME_FMT);
                 LocalTime arrTime = LocalTime.parse(values[9].trim(), TIME_FMT);
                 String trainType = values[10].trim();
-                HashSet<java.time.DayOfWeek> days = dayParser.parseDays(values[11].replaceAll("^\"|\"$", ""));
+                DayMask days = dayParser.parseDays(values[11].replaceAll("^\"|\"$", ""));
                 double firstClass = Double.parseDouble(values[12].trim());
                 double secondClass = Double.parseDouble(values[13].trim());
 
@@ -184,13 +183,12 @@ public class TripCSVRepository {
     /**
      * Formats days of operation for CSV output
      */
-    private String formatDaysOfOperation(HashSet<java.time.DayOfWeek> days) {
-        if (days.size() == 7) {
+    private String formatDaysOfOperation(DayMask days) {
+        if (days.isDaily()) {
             return "Daily";
         }
 
-        return days.stream()
-                .sorted()
+        return days.days().stream()
                 .map(this::formatDay)
                 .collect(java.util.stream.Collectors.joining(","));
     }
@@ -1,14 +1,13 @@
 package repositories;
 
+import database.ConnectionPool;
 import model.*;
 import parsers.DayParser;
 
 import java.sql.*;
-import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -16,71 +15,97 @@ import java.util.List;
  * Replaces TripCSVRepository for database-based operations
  */
 public class TripDatabaseRepository {
-    private static final String DB_URL = "jdbc:sqlite:train_system.db";
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final String INSERT_TRIP = "INSERT INTO trips (trip_id) VALUES (NULL)";
+    private static final String LAST_INSERT_ID = "SELECT last_insert_rowid()";
+    private static final String INSERT_RESERVATION = """
+        INSERT INTO reservations (trip_id, ticket_number, traveller_id, route_id)
+        VALUES (?, ?, ?, ?)
+        """;
+    private static final String UPSERT_TRAVELLER = """
+        INSERT OR REPLACE INTO travellers (traveller_id, first_name, last_name, age)
+        VALUES (?, ?, ?, ?)
+        """;
+
+    /**
+     * Reservation rows joined with their traveller and route; callers add the WHERE and ORDER BY clauses
+     */
+    private static final String TRIP_ROWS = """
+        SELECT r.trip_id, r.ticket_number, t.first_name, t.last_name, t.age, t.traveller_id,
+               rt.route_id, rt.departure_city, rt.arrival_city, rt.departure_time,
+               rt.arrival_time, rt.arrival_day_offset, rt.train_type, rt.days_of_operation,
+               rt.first_class_rate, rt.second_class_rate
+        FROM reservations r
+        JOIN travellers t ON r.traveller_id = t.traveller_id
+        JOIN routes rt ON r.route_id = rt.route_id
+        """;
+
+    // Statements that must be served by an index, see QueryPlanCheck; loading a page of all trips
+    // walks the reservations index in order and stops after the page
+    static final String LOAD_TRIPS_PAGE = TRIP_ROWS + """
+        WHERE r.trip_id IN (
+            SELECT DISTINCT trip_id FROM reservations
+            ORDER BY trip_id
+            LIMIT ? OFFSET ?
+        )
+        ORDER BY r.trip_id, r.reservation_id
+        """;
+
+    static final String LOAD_TRIP_BY_ID = TRIP_ROWS + """
+        WHERE r.trip_id = ?
+        ORDER BY r.reservation_id
+        """;
+
+    static final String FIND_TRIPS_BY_TRAVELLER = TRIP_ROWS + """
+        WHERE r.trip_id IN (
+            SELECT DISTINCT r2.trip_id
+            FROM reservations r2
+            JOIN travellers t2 ON r2.traveller_id = t2.traveller_id
+            WHERE LOWER(t2.last_name) = LOWER(?) AND t2.traveller_id = ?
+            ORDER BY r2.trip_id
+            LIMIT ? OFFSET ?
+        )
+        ORDER BY r.trip_id, r.reservation_id
+        """;
+
+    static final String DELETE_RESERVATIONS = "DELETE FROM reservations WHERE trip_id = ?";
+    static final String DELETE_TRIP = "DELETE FROM trips WHERE trip_id = ?";
+
+    static final String FIND_MATCHING_ROUTE = """
+        SELECT route_id FROM routes
+        WHERE departure_city = ?
+        AND arrival_city = ?
+        AND departure_time = ?
+        AND train_type = ?
+        AND first_class_rate = ?
+        AND second_class_rate = ?
+        LIMIT 1
+        """;
+
     private final DayParser dayParser;
+    private final ConnectionPool pool;
+    private final RouteRepository routeRepo;
 
     public TripDatabaseRepository() {
+        this(ConnectionPool.getInstance(), RouteRepository.getInstance());
+    }
+
+    public TripDatabaseRepository(ConnectionPool pool, RouteRepository routeRepo) {
         this.dayParser = DayParser.getInstance();
+        this.pool = pool;
+        this.routeRepo = routeRepo;
     }
 
     /**
-     * Saves a trip to the database
+     * Saves a trip to the database; the commit is synced to disk before this returns
      * Returns the generated numeric trip ID
      */
     public long saveTrip(Trip trip) {
-        String insertTripSQL = "INSERT INTO trips (trip_id) VALUES (NULL)";
-        String getLastIdSQL = "SELECT last_insert_rowid()";
-        String insertReservationSQL = """
-            INSERT INTO reservations (trip_id, ticket_number, traveller_id, route_id)
-            VALUES (?, ?, ?, ?)
-            """;
-
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
-
-            long tripId;
-
-            // Generate new trip ID
-            try (Statement stmt = conn.createStatement()) {
-                stmt.executeUpdate(insertTripSQL);
-                
-                try (ResultSet rs = stmt.executeQuery(getLastIdSQL)) {
-                    if (rs.next()) {
-                        tripId = rs.getLong(1);
-                    } else {
-                        throw new SQLException("Failed to generate trip ID");
-                    }
-                }
-            }
-
-            // Insert reservations
-            try (PreparedStatement pstmt = conn.prepareStatement(insertReservationSQL)) {
-                for (Reservation reservation : trip.reservations()) {
-                    Traveller traveller = reservation.traveller();
-                    model.Connection connection = reservation.connection();
-                    Ticket ticket = reservation.ticket();
-
-                    // Save traveller first
-                    saveTraveller(conn, traveller);
-
-                    // Find matching route
-                    String routeId = findMatchingRouteId(conn, connection);
-                    
-                    if (routeId != null) {
-                        pstmt.setLong(1, tripId);
-                        pstmt.setLong(2, ticket.number());
-                        pstmt.setString(3, traveller.id());
-                        pstmt.setString(4, routeId);
-                        pstmt.addBatch();
-                    } else {
-                        System.err.println("Warning: No matching route found for reservation");
-                    }
-                }
-                pstmt.executeBatch();
-            }
-
-            conn.commit();
+        try (ConnectionPool.PooledConnection conn = pool.durableWrite()) {
+            conn.connection().setAutoCommit(false);
+            long tripId = insertTrip(conn, trip);
+            conn.connection().commit();
             System.out.println("✓ Trip saved to database with ID: " + tripId);
             return tripId;
 
@@ -92,93 +117,105 @@ public class TripDatabaseRepository {
     }
 
     /**
-     * Loads all trips from the database
+     * Saves several trips in a single transaction
+     * Returns their numeric trip IDs in order, or null when the transaction failed and none was saved
      */
-    public List<Trip> loadTrips() {
-        List<Trip> trips = new ArrayList<>();
-        String query = "SELECT DISTINCT trip_id FROM trips ORDER BY trip_id";
+    public long[] saveTrips(List<Trip> trips) {
+        try (ConnectionPool.PooledConnection conn = pool.durableWrite()) {
+            conn.connection().setAutoCommit(false);
+            long[] tripIds = new long[trips.size()];
+            for (int i = 0; i < trips.size(); i++) {
+                tripIds[i] = insertTrip(conn, trips.get(i));
+            }
+            conn.connection().commit();
+            return tripIds;
 
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        } catch (SQLException e) {
+            System.err.println("Error saving " + trips.size() + " trips: " + e.getMessage());
+            return null;
+        }
+    }
 
-            while (rs.next()) {
-                long tripId = rs.getLong("trip_id");
-                Trip trip = loadTripById(tripId);
-                if (trip != null && !trip.reservations().isEmpty()) {
-                    trips.add(trip);
-                }
+    /**
+     * Inserts a trip with its travellers and reservations in the caller's transaction
+     */
+    private long insertTrip(ConnectionPool.PooledConnection conn, Trip trip) throws SQLException {
+        long tripId;
+
+        // Generate new trip ID
+        conn.prepare(INSERT_TRIP).executeUpdate();
+        try (ResultSet rs = conn.prepare(LAST_INSERT_ID).executeQuery()) {
+            if (rs.next()) {
+                tripId = rs.getLong(1);
+            } else {
+                throw new SQLException("Failed to generate trip ID");
             }
+        }
+
+        // Insert travellers and reservations in two batches
+        PreparedStatement travellerStmt = conn.prepare(UPSERT_TRAVELLER);
+        PreparedStatement pstmt = conn.prepare(INSERT_RESERVATION);
+        for (Reservation reservation : trip.reservations()) {
+            Traveller traveller = reservation.traveller();
+            model.Connection connection = reservation.connection();
+            Ticket ticket = reservation.ticket();
+
+            // Queue the traveller ahead of its reservation
+            addTraveller(travellerStmt, traveller);
+
+            // Bookings carry the id of the route they were made on
+            String routeId = connection.routeId() != null
+                    ? connection.routeId()
+                    : findMatchingRouteId(conn, connection);
+
+            if (routeId != null) {
+                pstmt.setLong(1, tripId);
+                pstmt.setLong(2, ticket.number());
+                pstmt.setString(3, traveller.id());
+                pstmt.setString(4, routeId);
+                pstmt.addBatch();
+            } else {
+                System.err.println("Warning: No matching route found for reservation");
+            }
+        }
+        travellerStmt.executeBatch();
+        pstmt.executeBatch();
+
+        return tripId;
+    }
+
+    /**
+     * Loads all trips from the database
+     */
+    public List<Trip> loadTrips() {
+        return loadTrips(0, -1);
+    }
+
+    /**
+     * Loads one page of trips in trip ID order; a negative limit loads every trip from offset on
+     */
+    public List<Trip> loadTrips(int offset, int limit) {
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(LOAD_TRIPS_PAGE);
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, offset);
+            return readTrips(pstmt);
 
         } catch (SQLException e) {
             System.err.println("Error loading trips: " + e.getMessage());
+            return new ArrayList<>();
         }
-
-        return trips;
     }
 
     /**
      * Loads a trip by its numerical ID
      */
     public Trip loadTripById(long tripId) {
-        String query = """
-            SELECT r.ticket_number, t.first_name, t.last_name, t.age, t.traveller_id,
-                   rt.route_id, rt.departure_city, rt.arrival_city, rt.departure_time, 
-                   rt.arrival_time, rt.train_type, rt.days_of_operation, 
-                   rt.first_class_rate, rt.second_class_rate
-            FROM reservations r
-            JOIN travellers t ON r.traveller_id = t.traveller_id
-            JOIN routes rt ON r.route_id = rt.route_id
-            WHERE r.trip_id = ?
-            """;
-
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(LOAD_TRIP_BY_ID);
             pstmt.setLong(1, tripId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                Trip trip = new Trip(String.valueOf(tripId));
-
-                while (rs.next()) {
-                    // Parse traveller
-                    String firstName = rs.getString("first_name");
-                    String lastName = rs.getString("last_name");
-                    int age = rs.getInt("age");
-                    String travellerId = rs.getString("traveller_id");
-                    Traveller traveller = new Traveller(firstName, lastName, age, travellerId);
-
-                    // Parse route
-                    String routeId = rs.getString("route_id");
-                    String depCity = rs.getString("departure_city");
-                    String arrCity = rs.getString("arrival_city");
-                    LocalTime depTime = LocalTime.parse(rs.getString("departure_time"), TIME_FMT);
-                    LocalTime arrTime = LocalTime.parse(rs.getString("arrival_time"), TIME_FMT);
-                    String trainType = rs.getString("train_type");
-                    HashSet<DayOfWeek> days = dayParser.parseDays(rs.getString("days_of_operation"));
-                    double firstClass = rs.getDouble("first_class_rate");
-                    double secondClass = rs.getDouble("second_class_rate");
-
-                    model.Record record = new model.Record(routeId, depCity, arrCity, depTime, arrTime,
-                            trainType, days, firstClass, secondClass);
-                    model.Connection connection = new model.Connection(record);
-
-                    // Parse ticket
-                    long ticketNumber = rs.getLong("ticket_number");
-                    Ticket ticket = new Ticket(ticketNumber);
-
-                    // Create reservation
-                    Reservation reservation = new Reservation(traveller, connection, ticket);
-                    
-                    try {
-                        trip.addReservation(reservation);
-                    } catch (IllegalArgumentException e) {
-                        // Duplicate reservation, skip
-                    }
-                }
-
-                return trip.reservations().isEmpty() ? null : trip;
-            }
+            List<Trip> trips = readTrips(pstmt);
+            return trips.isEmpty() ? null : trips.get(0);
 
         } catch (SQLException e) {
             System.err.println("Error loading trip by ID: " + e.getMessage());
@@ -190,60 +227,107 @@ public class TripDatabaseRepository {
      * Finds all trips for a specific traveller
      */
     public List<Trip> findTripsByTraveller(String lastName, String travellerId) {
-        List<Trip> matchingTrips = new ArrayList<>();
-        String query = """
-            SELECT DISTINCT r.trip_id
-            FROM reservations r
-            JOIN travellers t ON r.traveller_id = t.traveller_id
-            WHERE LOWER(t.last_name) = LOWER(?) AND t.traveller_id = ?
-            ORDER BY r.trip_id
-            """;
-
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        return findTripsByTraveller(lastName, travellerId, 0, -1);
+    }
 
+    /**
+     * Finds one page of a traveller's trips in trip ID order, each with all of its reservations;
+     * a negative limit returns every trip from offset on
+     */
+    public List<Trip> findTripsByTraveller(String lastName, String travellerId, int offset, int limit) {
+        try (ConnectionPool.PooledConnection conn = pool.read()) {
+            PreparedStatement pstmt = conn.prepare(FIND_TRIPS_BY_TRAVELLER);
             pstmt.setString(1, lastName);
             pstmt.setString(2, travellerId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    long tripId = rs.getLong("trip_id");
-                    Trip trip = loadTripById(tripId);
-                    if (trip != null) {
-                        matchingTrips.add(trip);
-                    }
-                }
-            }
+            pstmt.setInt(3, limit);
+            pstmt.setInt(4, offset);
+            return readTrips(pstmt);
 
         } catch (SQLException e) {
             System.err.println("Error finding trips by traveller: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
 
-        return matchingTrips;
+    /**
+     * Runs a {@link #TRIP_ROWS} query ordered by trip and groups the rows into trips in a single pass
+     */
+    private List<Trip> readTrips(PreparedStatement pstmt) throws SQLException {
+        List<Trip> trips = new ArrayList<>();
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+            Trip trip = null;
+            long currentTripId = 0;
+
+            while (rs.next()) {
+                long tripId = rs.getLong("trip_id");
+                if (trip == null || tripId != currentTripId) {
+                    trip = new Trip(String.valueOf(tripId));
+                    currentTripId = tripId;
+                    trips.add(trip);
+                }
+
+                try {
+                    trip.addReservation(mapReservation(rs));
+                } catch (IllegalArgumentException e) {
+                    // Duplicate reservation, skip
+                }
+            }
+        }
+
+        return trips;
+    }
+
+    /**
+     * Maps a {@link #TRIP_ROWS} row to a Reservation
+     */
+    private Reservation mapReservation(ResultSet rs) throws SQLException {
+        // Parse traveller
+        String firstName = rs.getString("first_name");
+        String lastName = rs.getString("last_name");
+        int age = rs.getInt("age");
+        String travellerId = rs.getString("traveller_id");
+        Traveller traveller = new Traveller(firstName, lastName, age, travellerId);
+
+        // Parse route
+        String routeId = rs.getString("route_id");
+        String depCity = rs.getString("departure_city");
+        String arrCity = rs.getString("arrival_city");
+        LocalTime depTime = LocalTime.parse(rs.getString("departure_time"), TIME_FMT);
+        LocalTime arrTime = LocalTime.parse(rs.getString("arrival_time"), TIME_FMT);
+        int arrDayOffset = rs.getInt("arrival_day_offset");
+        String trainType = rs.getString("train_type");
+        DayMask days = dayParser.parseDays(rs.getString("days_of_operation"));
+        double firstClass = rs.getDouble("first_class_rate");
+        double secondClass = rs.getDouble("second_class_rate");
+
+        model.Record record = new model.Record(routeId, depCity, arrCity, depTime, arrTime,
+                arrDayOffset, trainType, days, firstClass, secondClass);
+        model.Connection connection = new model.Connection(record);
+
+        // Parse ticket
+        Ticket ticket = new Ticket(rs.getLong("ticket_number"));
+
+        return new Reservation(traveller, connection, ticket);
     }
 
     /**
      * Deletes a trip and all its reservations
      */
     public void deleteTrip(long tripId) {
-        String deleteReservations = "DELETE FROM reservations WHERE trip_id = ?";
-        String deleteTrip = "DELETE FROM trips WHERE trip_id = ?";
-
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
+        try (ConnectionPool.PooledConnection conn = pool.write()) {
+            conn.connection().setAutoCommit(false);
 
-            try (PreparedStatement pstmt1 = conn.prepareStatement(deleteReservations);
-                 PreparedStatement pstmt2 = conn.prepareStatement(deleteTrip)) {
+            PreparedStatement pstmt1 = conn.prepare(DELETE_RESERVATIONS);
+            pstmt1.setLong(1, tripId);
+            pstmt1.executeUpdate();
 
-                pstmt1.setLong(1, tripId);
-                pstmt1.executeUpdate();
+            PreparedStatement pstmt2 = conn.prepare(DELETE_TRIP);
+            pstmt2.setLong(1, tripId);
+            pstmt2.executeUpdate();
 
-                pstmt2.setLong(1, tripId);
-                pstmt2.executeUpdate();
-
-                conn.commit();
-                System.out.println("✓ Trip " + tripId + " deleted");
-            }
+            conn.connection().commit();
+            System.out.println("✓ Trip " + tripId + " deleted");
 
         } catch (SQLException e) {
             System.err.println("Error deleting trip: " + e.getMessage());
@@ -256,9 +340,8 @@ public class TripDatabaseRepository {
     public int getTripCount() {
         String query = "SELECT COUNT(*) as count FROM trips";
 
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (ConnectionPool.PooledConnection conn = pool.read();
+             ResultSet rs = conn.prepare(query).executeQuery()) {
 
             if (rs.next()) {
                 return rs.getInt("count");
@@ -272,50 +355,36 @@ public class TripDatabaseRepository {
     }
 
     /**
-     * Saves a traveller to the database
+     * Adds a traveller to the batch of the travellers upsert
      */
-    private void saveTraveller(java.sql.Connection conn, Traveller traveller) throws SQLException {
-        String insertSQL = """
-            INSERT OR REPLACE INTO travellers (traveller_id, first_name, last_name, age)
-            VALUES (?, ?, ?, ?)
-            """;
-
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
-            pstmt.setString(1, traveller.id());
-            pstmt.setString(2, traveller.firstName());
-            pstmt.setString(3, traveller.lastName());
-            pstmt.setInt(4, traveller.age());
-            pstmt.executeUpdate();
-        }
+    private void addTraveller(PreparedStatement pstmt, Traveller traveller) throws SQLException {
+        pstmt.setString(1, traveller.id());
+        pstmt.setString(2, traveller.firstName());
+        pstmt.setString(3, traveller.lastName());
+        pstmt.setInt(4, traveller.age());
+        pstmt.addBatch();
     }
 
     /**
-     * Finds a matching route ID for a connection
+     * Finds a matching route ID for a connection, from the in-memory index when one is loaded
      */
-    private String findMatchingRouteId(java.sql.Connection conn, model.Connection connection) throws SQLException {
-        String query = """
-            SELECT route_id FROM routes
-            WHERE departure_city = ?
-            AND arrival_city = ?
-            AND departure_time = ?
-            AND train_type = ?
-            AND first_class_rate = ?
-            AND second_class_rate = ?
-            LIMIT 1
-            """;
-
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, connection.from());
-            pstmt.setString(2, connection.to());
-            pstmt.setString(3, connection.depTime().format(TIME_FMT));
-            pstmt.setString(4, connection.trainType());
-            pstmt.setDouble(5, connection.firstRate());
-            pstmt.setDouble(6, connection.secondRate());
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("route_id");
-                }
+    private String findMatchingRouteId(ConnectionPool.PooledConnection conn, model.Connection connection) throws SQLException {
+        RouteIndex index = routeRepo.index();
+        if (index != null) {
+            return index.findRouteId(connection);
+        }
+
+        PreparedStatement pstmt = conn.prepare(FIND_MATCHING_ROUTE);
+        pstmt.setString(1, connection.from());
+        pstmt.setString(2, connection.to());
+        pstmt.setString(3, connection.depTime().format(TIME_FMT));
+        pstmt.setString(4, connection.trainType());
+        pstmt.setDouble(5, connection.firstRate());
+        pstmt.setDouble(6, connection.secondRate());
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getString("route_id");
             }
         }
 
@@ -7,14 +7,26 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import model.Record;
-import model.TimeUtils;
+import model.RouteStore;
 
 public class AdvancedSearch {
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
-    private List<Record> records;
+    private final SearchIndex index;
 
     public AdvancedSearch(List<Record> records) {
-        this.records = records;
+        this(new SearchIndex(records));
+    }
+
+    public AdvancedSearch(RouteStore table) {
+        this(new SearchIndex(table));
+    }
+
+    public AdvancedSearch(SearchIndex index) {
+        this.index = index;
+    }
+
+    public SearchIndex index() {
+        return index;
     }
 
     public List<Record> searchAdvanced(
@@ -56,64 +68,18 @@ public class AdvancedSearch {
             searchDay = parseDayOfWeek(day);
         }
 
-        for (Record r : records) {
-            boolean match = true;
-
-            // Filter by departure city
-            if (departure != null && !departure.isEmpty() &&
-                    !r.getDepartureCity().equalsIgnoreCase(departure)) {
-                match = false;
-            }
-
-            // Filter by arrival city
-            if (arrival != null && !arrival.isEmpty() &&
-                    !r.getArrivalCity().equalsIgnoreCase(arrival)) {
-                match = false;
-            }
-
-            // Filter by train type
-            if (trainType != null && !trainType.isEmpty() &&
-                    !r.getTrainType().equalsIgnoreCase(trainType)) {
-                match = false;
-            }
-
-            // Filter by day of operation
-            if (searchDay != null && !r.getDaysOfOperation().contains(searchDay)) {
-                match = false;
-            }
-
-            // Filter by first class price
-            if (maxFirstClassPrice != null &&
-                    r.getFirstClassRate() > maxFirstClassPrice) {
-                match = false;
-            }
-
-            // Filter by second class price
-            if (maxSecondClassPrice != null &&
-                    r.getSecondClassRate() > maxSecondClassPrice) {
-                match = false;
-            }
-
-            // Filter by minimum departure time
-            if (minDepTime != null && r.getDepartureTime().isBefore(minDepTime)) {
-                match = false;
-            }
-
-            // Filter by maximum departure time
-            if (maxDepTime != null && r.getDepartureTime().isAfter(maxDepTime)) {
-                match = false;
-            }
-
-            // Filter by maximum duration
-            if (maxDuration != null) {
-                long duration = TimeUtils.minutesBetween(r.getDepartureTime(), r.getArrivalTime());
-                if (duration > maxDuration) {
-                    match = false;
-                }
-            }
-
-            if (match) {
-                results.add(r);
+        // Cities, train type, day and departure window are answered by the index;
+        // the remaining filters only read the fare and time columns
+        RouteStore table = index.table();
+        long maxFirstCents = maxFirstClassPrice == null ? Long.MAX_VALUE : RouteStore.centsFloor(maxFirstClassPrice);
+        long maxSecondCents = maxSecondClassPrice == null ? Long.MAX_VALUE : RouteStore.centsFloor(maxSecondClassPrice);
+        int maxMinutes = maxDuration == null ? Integer.MAX_VALUE : maxDuration;
+
+        for (int row : index.lookup(departure, arrival, trainType, searchDay, minDepTime, maxDepTime)) {
+            if (table.firstClassCents(row) <= maxFirstCents
+                    && table.secondClassCents(row) <= maxSecondCents
+                    && table.durationMinutes(row) <= maxMinutes) {
+                results.add(table.record(row));
             }
         }
 
@@ -145,8 +111,7 @@ public class AdvancedSearch {
             case "1" -> // Sort by departure time
                     sorted.sort(Comparator.comparing(Record::getDepartureTime));
             case "2" -> // Sort by duration
-                    sorted.sort(Comparator.comparingLong(r ->
-                            TimeUtils.minutesBetween(r.getDepartureTime(), r.getArrivalTime())));
+                    sorted.sort(Comparator.comparingInt(Record::getDurationMinutes));
             case "3" -> // Sort by first class price
                     sorted.sort(Comparator.comparingDouble(Record::getFirstClassRate));
             case "4" -> // Sort by second class price
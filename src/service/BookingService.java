@@ -10,22 +10,42 @@ import repositories.TripDatabaseRepository;
 
 import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class BookingService {
-    private final TripDatabaseRepository tripRepo;
     private final ClientRepository clientRepo;
+    private final BookingWriter writer;
 
     public BookingService(TripDatabaseRepository tripRepo, ClientRepository clientRepo) {
-        this.tripRepo = tripRepo;
+        this(new BookingWriter(tripRepo), clientRepo);
+    }
+
+    public BookingService(BookingWriter writer, ClientRepository clientRepo) {
         this.clientRepo = clientRepo;
+        this.writer = writer;
     }
 
     public Trip bookDirect(List<Traveller> travellers, model.Record r) {
+        return await(bookDirectAsync(travellers, r));
+    }
+
+    public Trip bookConnection(List<Traveller> travellers, List<Connection> legs) {
+        return await(bookConnectionAsync(travellers, legs));
+    }
+
+    /**
+     * Queues a direct booking; the future completes with the saved trip once it is committed
+     */
+    public CompletableFuture<Trip> bookDirectAsync(List<Traveller> travellers, model.Record r) {
         String itinerary = r.getDepartureCity() + " → " + r.getArrivalCity() + " " + r.getDepartureTime() + "-" + r.getArrivalTime() + " (" + r.getTrainType() + ")";
         return persist(travellers, itinerary, new Connection(r));
     }
 
-    public Trip bookConnection(List<Traveller> travellers, List<Connection> legs) {
+    /**
+     * Queues a booking of a multi-leg connection; the future completes with the saved trip once it is committed
+     */
+    public CompletableFuture<Trip> bookConnectionAsync(List<Traveller> travellers, List<Connection> legs) {
         StringJoiner sj = new StringJoiner(" | ");
         for (Connection c : legs) sj.add(c.from() + "→" + c.to() + " " + c.depTime() + "-" + c.arrTime());
         String itinerary = sj.toString();
@@ -33,7 +53,19 @@ public class BookingService {
         return persist(travellers, itinerary, anchor);
     }
 
-    private Trip persist(List<Traveller> travellers, String itinerary, Connection connectionAnchor) {
+    /**
+     * Waits for a queued booking; a trip that could not be saved comes back with ID -1 as before
+     */
+    private static Trip await(CompletableFuture<Trip> booking) {
+        try {
+            return booking.join();
+        } catch (CompletionException e) {
+            System.err.println("Error booking trip: " + e.getCause().getMessage());
+            return new Trip("-1");
+        }
+    }
+
+    private CompletableFuture<Trip> persist(List<Traveller> travellers, String itinerary, Connection connectionAnchor) {
         // Create a temporary trip with placeholder ID
         Trip t = new Trip("temp");
         for (Traveller traveller : travellers) {
@@ -43,10 +75,7 @@ public class BookingService {
             t.addReservation(reservation);
         }
         
-        // Save to database and get the actual numeric trip ID
-        long numericTripId = tripRepo.saveTrip(t);
-        
-        // Return a new Trip object with the correct numeric ID
-        return new Trip(String.valueOf(numericTripId));
+        // Queue for the database writer, which completes with the actual numeric trip ID
+        return writer.submit(t);
     }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package service;
+
+import model.Trip;
+import repositories.TripDatabaseRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single background writer that saves trips with group commit.
+ * Submitted trips wait in a bounded queue; the writer takes whatever has queued up, up to a
+ * batch limit, and saves it in one transaction, so a burst of bookings shares one commit
+ * and one fsync instead of paying one each. The future of a trip completes only after its
+ * transaction has committed and been synced to disk, whatever the database profile; a trip whose batch fails
+ * is retried on its own, so one bad booking cannot fail the others.
+ * Queue and batch sizes can be set with -Dbookings.queue and -Dbookings.batch.
+ */
+public class BookingWriter implements AutoCloseable {
+    private final TripDatabaseRepository tripRepo;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private record Pending(Trip trip, CompletableFuture<Trip> result) {
+    }
+
+    public BookingWriter(TripDatabaseRepository tripRepo) {
+        this(tripRepo, Integer.getInteger("bookings.queue", 1024), Integer.getInteger("bookings.batch", 64));
+    }
+
+    public BookingWriter(TripDatabaseRepository tripRepo, int queueCapacity, int maxBatch) {
+        this.tripRepo = tripRepo;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.writer = new Thread(this::run, "booking-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a trip for saving, waiting for room when the queue is full.
+     * The future completes with the trip under its generated ID once it is durably committed.
+     */
+    public CompletableFuture<Trip> submit(Trip trip) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Booking writer is closed"));
+        }
+        CompletableFuture<Trip> result = new CompletableFuture<>();
+        try {
+            queue.put(new Pending(trip, result));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Only close() stops the writer, once the queue is empty
+            } catch (RuntimeException e) {
+                batch.forEach(p -> p.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Trips that raced with close()
+        queue.drainTo(batch);
+        batch.forEach(p -> p.result().completeExceptionally(new IllegalStateException("Booking writer is closed")));
+    }
+
+    private void write(List<Pending> batch) {
+        List<Trip> trips = new ArrayList<>(batch.size());
+        for (Pending p : batch) trips.add(p.trip());
+
+        long[] tripIds = batch.size() == 1 ? null : tripRepo.saveTrips(trips);
+        for (int i = 0; i < batch.size(); i++) {
+            long tripId = tripIds != null ? tripIds[i] : tripRepo.saveTrip(trips.get(i));
+            if (tripId < 0) {
+                batch.get(i).result().completeExceptionally(new IllegalStateException("Trip could not be saved"));
+            } else {
+                batch.get(i).result().complete(new Trip(String.valueOf(tripId)));
+            }
+        }
+    }
+
+    /**
+     * Stops accepting trips and waits until the queued ones are written
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,24 +1,126 @@
 package service;
 
 import model.Connection;
+import model.DayMask;
 import model.Record;
+import model.RouteStore;
+import model.RouteTable;
 import model.TimeUtils;
 
 import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ConnectionFinder {
 
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
-    private final Map<String, List<Record>> routesByDepartureCity;
+    private static final int MINUTES_PER_DAY = DepartureBoard.MINUTES_PER_DAY;
+    // A search is handed out to parallel tasks only when cutting its tree leaves at least this many
+    // prefixes: about four per worker on an eight-core machine, so that one large subtree does not
+    // leave the other workers idle; fewer, smaller tasks cost more to hand out than they save
+    private static final int MIN_FORKED_BRANCHES = 32;
+    // Depth at which findAllConnections cuts the search tree to count its branches
+    private static final int ALL_CONNECTIONS_SPLIT_DEPTH = 2;
+    private final RouteStore table;
+    private final DepartureBoard[] boardsByDepartureCity;
+    private final DepartureBoard[] boardsByArrivalCity;
+    private final int[] boardIndexOf;
+    // Connection flyweights, created the first time a result leg is read; a racing thread at worst builds an equal one
+    private final Connection[] connections;
     private final LayoverPolicy layoverPolicy = LayoverPolicy.getInstance();
+    private volatile TwoHopIndex twoHopIndex;
 
     public ConnectionFinder(List<Record> allRoutes) {
-        this.routesByDepartureCity = allRoutes.stream()
-                .collect(Collectors.groupingBy(r -> r.getDepartureCity().toLowerCase()));
+        this(RouteTable.of(allRoutes));
+    }
+
+    /**
+     * Searches run on the table's columns; {@link Record}s are only built for the itineraries returned
+     */
+    public ConnectionFinder(RouteStore table) {
+        this.table = table;
+        this.boardsByDepartureCity = DepartureBoard.byDepartureCity(table);
+        // Arrival boards are ordered by arrival minute and drive the backward half of bidirectional searches
+        this.boardsByArrivalCity = DepartureBoard.byArrivalCity(table);
+        for (int c = 0; c < table.cityCount(); c++) {
+            if (boardsByDepartureCity[c].size() == 0) boardsByDepartureCity[c] = null;
+            if (boardsByArrivalCity[c].size() == 0) boardsByArrivalCity[c] = null;
+        }
+
+        this.connections = new Connection[table.size()];
+        this.boardIndexOf = new int[table.size()];
+        for (DepartureBoard board : boardsByDepartureCity) {
+            if (board == null) continue;
+            for (int b = 0; b < board.size(); b++) boardIndexOf[board.position(b)] = b;
+        }
+    }
+
+    private ConnectionFinder(RouteStore table, DepartureBoard[] boardsByDepartureCity,
+                             DepartureBoard[] boardsByArrivalCity, Connection[] connections, int[] boardIndexOf) {
+        this.table = table;
+        this.boardsByDepartureCity = boardsByDepartureCity;
+        this.boardsByArrivalCity = boardsByArrivalCity;
+        this.connections = connections;
+        this.boardIndexOf = boardIndexOf;
+    }
+
+    /**
+     * A finder over a patched table that shares this finder's boards for every city the patch did
+     * not touch and rebuilds only the touched cities' boards. A two-hop index, when enabled, is
+     * rebuilt for the new table.
+     */
+    public ConnectionFinder patched(RouteTable.Patch patch) {
+        return patched(patch, patch.table());
+    }
+
+    /**
+     * The same over another store holding the patched table's rows under the same numbers, such
+     * as an off-heap copy of it
+     */
+    public ConnectionFinder patched(RouteTable.Patch patch, RouteStore next) {
+        DepartureBoard[] departures = Arrays.copyOf(boardsByDepartureCity, next.cityCount());
+        DepartureBoard[] arrivals = Arrays.copyOf(boardsByArrivalCity, next.cityCount());
+        int[] boardIndex = Arrays.copyOf(boardIndexOf, next.size());
+        Connection[] flyweights = Arrays.copyOf(connections, next.size());
+        for (int row = patch.changedRows().nextSetBit(0); row >= 0 && row < next.size();
+             row = patch.changedRows().nextSetBit(row + 1)) {
+            flyweights[row] = null;
+        }
+
+        for (int c = patch.touchedCities().nextSetBit(0); c >= 0; c = patch.touchedCities().nextSetBit(c + 1)) {
+            int[] departing = next.departuresFrom(c);
+            int[] arriving = next.arrivalsAt(c);
+            departures[c] = departing.length == 0 ? null : new DepartureBoard(departing, next::departureMinute);
+            arrivals[c] = arriving.length == 0 ? null : new DepartureBoard(arriving, next::arrivalMinute);
+            for (int b = 0; b < departing.length; b++) boardIndex[departing[b]] = b;
+        }
+
+        ConnectionFinder finder = new ConnectionFinder(next, departures, arrivals, flyweights, boardIndex);
+        if (twoHopIndex != null) finder.enableTwoHopIndex();
+        return finder;
+    }
+
+    /**
+     * Precomputes every two-leg combination so that searches limited to two legs are answered
+     * from the index instead of walking the departure boards. Returns the index for its stats.
+     */
+    public TwoHopIndex enableTwoHopIndex() {
+        TwoHopIndex index = new TwoHopIndex(table, boardsByDepartureCity);
+        twoHopIndex = index;
+        return index;
+    }
+
+    public boolean hasTwoHopIndex() {
+        return twoHopIndex != null;
     }
 
     public List<List<Connection>> findConnections(String origin,
@@ -40,27 +142,449 @@ public class ConnectionFinder {
                                                   String minDepartureTime,
                                                   String maxDepartureTime,
                                                   Integer maxDuration) {
+        return streamConnections(origin, destination, minTransferMinutes, maxConnections,
+                trainType, day, maxFirstClassPrice, maxSecondClassPrice,
+                minDepartureTime, maxDepartureTime, maxDuration)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Lazily produces itineraries in the order the depth-first search finds them.
+     * The search only advances when the stream asks for the next element, so short-circuiting
+     * operations such as limit(n) or findFirst() stop the search itself.
+     */
+    public Stream<List<Connection>> streamConnections(String origin,
+                                                      String destination,
+                                                      int minTransferMinutes,
+                                                      int maxConnections,
+                                                      String trainType,
+                                                      String day,
+                                                      Double maxFirstClassPrice,
+                                                      Double maxSecondClassPrice,
+                                                      String minDepartureTime,
+                                                      String maxDepartureTime,
+                                                      Integer maxDuration) {
+
+        // Parse time constraints into the first leg's departure window
+        LocalTime minDepTime = parseTime(minDepartureTime);
+        LocalTime maxDepTime = parseTime(maxDepartureTime);
+        int minDepMinute = minDepTime == null ? 0 : TimeUtils.minuteOfDay(minDepTime);
+        int maxDepMinute = maxDepTime == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDepTime);
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+
+        TwoHopIndex index = twoHopIndex;
+        if (index != null && maxConnections == 2) {
+            return findTwoLegConnections(index, originId, targetId, minTransferMinutes,
+                    filter, minDepMinute, maxDepMinute).stream();
+        }
+
+        return StreamSupport.stream(new PathSearch(originId, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, null), false);
+    }
+
+    /**
+     * Returns the best k itineraries under the given ranking, best first.
+     * Only k itineraries are kept while the search runs, and partial paths whose duration or
+     * fare already ranks below the current k-th best are not extended.
+     */
+    public List<List<Connection>> findTopConnections(String origin,
+                                                     String destination,
+                                                     int minTransferMinutes,
+                                                     int maxConnections,
+                                                     String trainType,
+                                                     String day,
+                                                     Double maxFirstClassPrice,
+                                                     Double maxSecondClassPrice,
+                                                     String minDepartureTime,
+                                                     String maxDepartureTime,
+                                                     Integer maxDuration,
+                                                     ItineraryRanking ranking,
+                                                     int k) {
+        LocalTime minDepTime = parseTime(minDepartureTime);
+        LocalTime maxDepTime = parseTime(maxDepartureTime);
+        int minDepMinute = minDepTime == null ? 0 : TimeUtils.minuteOfDay(minDepTime);
+        int maxDepMinute = maxDepTime == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDepTime);
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+
+        TopItineraries top = new TopItineraries(k, ranking);
+        TwoHopIndex index = twoHopIndex;
+        if (index != null && maxConnections == 2) {
+            findTwoLegConnections(index, originId, targetId, minTransferMinutes,
+                    filter, minDepMinute, maxDepMinute).forEach(top::offer);
+            return top.toList();
+        }
+        new PathSearch(originId, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, top).forEachRemaining(top::offer);
+        return top.toList();
+    }
+
+    /**
+     * Same results, in the same order, as {@link #findConnections}, searched on the common
+     * fork/join pool. The search tree is cut after the first {@code splitDepth} legs (1 or 2);
+     * every prefix is then explored by its own task with its own path and visited-city state,
+     * and the task results are concatenated in prefix order. When the cut leaves fewer than
+     * {@value #MIN_FORKED_BRANCHES} prefixes, or the pool has a single worker, the prefixes are
+     * explored one after another on the calling thread instead.
+     */
+    public List<List<Connection>> findConnectionsParallel(String origin,
+                                                          String destination,
+                                                          int minTransferMinutes,
+                                                          int maxConnections,
+                                                          String trainType,
+                                                          String day,
+                                                          Double maxFirstClassPrice,
+                                                          Double maxSecondClassPrice,
+                                                          String minDepartureTime,
+                                                          String maxDepartureTime,
+                                                          Integer maxDuration,
+                                                          int splitDepth) {
+        LocalTime minDepTime = parseTime(minDepartureTime);
+        LocalTime maxDepTime = parseTime(maxDepartureTime);
+        int minDepMinute = minDepTime == null ? 0 : TimeUtils.minuteOfDay(minDepTime);
+        int maxDepMinute = maxDepTime == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDepTime);
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+
+        // A two-hop lookup is cheaper than handing out tasks
+        TwoHopIndex index = twoHopIndex;
+        if (index != null && maxConnections == 2) {
+            return findTwoLegConnections(index, originId, targetId, minTransferMinutes,
+                    filter, minDepMinute, maxDepMinute);
+        }
+
+        List<Branch> branches = split(originId, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, splitDepth);
+        return searchBranches(branches, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, worthForking(branches));
+    }
+
+    /**
+     * Same results, in the same order, as {@link #findConnections}, searched the cheapest way for
+     * the query: itineraries of up to two legs sequentially (from the two-hop index when enabled),
+     * longer ones on parallel tasks when cutting the tree after two legs leaves at least
+     * {@value #MIN_FORKED_BRANCHES} prefixes and the pool has more than one worker, and otherwise
+     * by meeting in the middle ({@link #findConnectionsBidirectional}).
+     */
+    public List<List<Connection>> findAllConnections(String origin,
+                                                     String destination,
+                                                     int minTransferMinutes,
+                                                     int maxConnections,
+                                                     String trainType,
+                                                     String day,
+                                                     Double maxFirstClassPrice,
+                                                     Double maxSecondClassPrice,
+                                                     String minDepartureTime,
+                                                     String maxDepartureTime,
+                                                     Integer maxDuration) {
+        if (maxConnections <= ALL_CONNECTIONS_SPLIT_DEPTH) {
+            return findConnections(origin, destination, minTransferMinutes, maxConnections,
+                    trainType, day, maxFirstClassPrice, maxSecondClassPrice,
+                    minDepartureTime, maxDepartureTime, maxDuration);
+        }
 
-        // Parse time constraints
         LocalTime minDepTime = parseTime(minDepartureTime);
         LocalTime maxDepTime = parseTime(maxDepartureTime);
+        int minDepMinute = minDepTime == null ? 0 : TimeUtils.minuteOfDay(minDepTime);
+        int maxDepMinute = maxDepTime == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDepTime);
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+
+        List<Branch> branches = split(originId, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, ALL_CONNECTIONS_SPLIT_DEPTH);
+        if (!worthForking(branches)) {
+            return findConnectionsBidirectional(origin, destination, minTransferMinutes, maxConnections,
+                    trainType, day, maxFirstClassPrice, maxSecondClassPrice,
+                    minDepartureTime, maxDepartureTime, maxDuration);
+        }
+        return searchBranches(branches, targetId, minTransferMinutes, maxConnections,
+                filter, minDepMinute, maxDepMinute, true);
+    }
 
-        // Parse day if provided
-        DayOfWeek searchDay = parseDay(day);
+    /**
+     * Walks the top of the search tree sequentially, keeping itineraries shorter than the split
+     * depth and the prefixes to hand out, in the order the sequential search would meet them
+     */
+    private List<Branch> split(int originId, int targetId, int minTransferMinutes, int maxConnections,
+                               LegFilter filter, int minDepMinute, int maxDepMinute, int splitDepth) {
+        List<Branch> branches = new ArrayList<>();
+        PathSearch splitter = new PathSearch(Prefix.start(originId, table.cityCount()), targetId,
+                minTransferMinutes, maxConnections, filter, minDepMinute, maxDepMinute, null,
+                Math.max(splitDepth, 1), prefix -> branches.add(new Branch(null, prefix)));
+        splitter.forEachRemaining(found -> branches.add(new Branch(found, null)));
+        return branches;
+    }
+
+    private static boolean worthForking(List<Branch> branches) {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2) return false;
+        int prefixes = 0;
+        for (Branch branch : branches) {
+            if (branch.prefix != null && ++prefixes >= MIN_FORKED_BRANCHES) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Explores every prefix to the end, on the common pool when forking, and concatenates the
+     * results with the shorter itineraries in branch order
+     */
+    private List<List<Connection>> searchBranches(List<Branch> branches, int targetId, int minTransferMinutes,
+                                                  int maxConnections, LegFilter filter,
+                                                  int minDepMinute, int maxDepMinute, boolean fork) {
+        List<Callable<List<List<Connection>>>> tasks = new ArrayList<>();
+        for (Branch branch : branches) {
+            if (branch.prefix == null) continue;
+            tasks.add(() -> {
+                List<List<Connection>> found = new ArrayList<>();
+                new PathSearch(branch.prefix, targetId, minTransferMinutes, maxConnections,
+                        filter, minDepMinute, maxDepMinute, null, 0, null).forEachRemaining(found::add);
+                return found;
+            });
+        }
 
         List<List<Connection>> foundConnections = new ArrayList<>();
-        Deque<Record> currentPath = new ArrayDeque<>();
-        Set<String> visitedCities = new HashSet<>();
+        if (!fork) {
+            int next = 0;
+            for (Branch branch : branches) {
+                if (branch.prefix == null) {
+                    foundConnections.add(branch.found);
+                } else {
+                    try {
+                        foundConnections.addAll(tasks.get(next++).call());
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Connection search failed", e);
+                    }
+                }
+            }
+            return foundConnections;
+        }
 
-        exploreConnections(origin, destination, minTransferMinutes, maxConnections,
-                visitedCities, currentPath, foundConnections,
-                trainType, searchDay, maxFirstClassPrice, maxSecondClassPrice,
-                minDepTime, maxDepTime, maxDuration);
+        List<Future<List<List<Connection>>>> futures = ForkJoinPool.commonPool().invokeAll(tasks);
+        int next = 0;
+        try {
+            for (Branch branch : branches) {
+                if (branch.prefix == null) {
+                    foundConnections.add(branch.found);
+                } else {
+                    foundConnections.addAll(futures.get(next++).get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Connection search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Connection search failed", e.getCause());
+        }
+        return foundConnections;
+    }
 
+    /**
+     * Same results, in the same order, as {@link #findConnections}, found by meeting in the middle.
+     * A forward search from the origin stops after the first half of the legs, a backward search
+     * over arrival boards builds every suffix of up to the remaining legs that ends at the
+     * destination, and each forward prefix is joined with the suffixes leaving its last city
+     * inside the transfer window. Both halves are only as deep as half the itinerary.
+     */
+    public List<List<Connection>> findConnectionsBidirectional(String origin,
+                                                               String destination,
+                                                               int minTransferMinutes,
+                                                               int maxConnections,
+                                                               String trainType,
+                                                               String day,
+                                                               Double maxFirstClassPrice,
+                                                               Double maxSecondClassPrice,
+                                                               String minDepartureTime,
+                                                               String maxDepartureTime,
+                                                               Integer maxDuration) {
+        LocalTime minDepTime = parseTime(minDepartureTime);
+        LocalTime maxDepTime = parseTime(maxDepartureTime);
+        int minDepMinute = minDepTime == null ? 0 : TimeUtils.minuteOfDay(minDepTime);
+        int maxDepMinute = maxDepTime == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDepTime);
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+        int forwardLegs = (maxConnections + 1) / 2;
+        int backwardLegs = maxConnections - forwardLegs;
+        int minTransfer = Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+
+        // Forward half: itineraries of at most forwardLegs legs, and the prefixes to join, in search order
+        List<Branch> branches = new ArrayList<>();
+        PathSearch forward = new PathSearch(Prefix.start(originId, table.cityCount()), targetId,
+                minTransferMinutes, maxConnections, filter, minDepMinute, maxDepMinute, null, forwardLegs,
+                prefix -> branches.add(new Branch(null, prefix)));
+        forward.forEachRemaining(found -> branches.add(new Branch(found, null)));
+
+        Map<Integer, List<Suffix>> suffixes = backwardLegs == 0 ? Map.of()
+                : findSuffixes(originId, targetId, backwardLegs, minTransfer, filter.on(table));
+        int searchDayBit = filter.searchDay() == null ? 0 : DayMask.bit(filter.searchDay());
+
+        List<List<Connection>> foundConnections = new ArrayList<>();
+        for (Branch branch : branches) {
+            if (branch.prefix == null) {
+                foundConnections.add(branch.found);
+                continue;
+            }
+            Prefix prefix = branch.prefix;
+            List<Suffix> candidates = suffixes.get(prefix.city);
+            if (candidates == null) continue;
+
+            // Suffixes are grouped by first leg in board order, so the window is walked like the forward search would
+            int last = prefix.legs[prefix.legs.length - 1];
+            DepartureBoard board = boardsByDepartureCity[prefix.city];
+            int arrival = table.arrivalMinute(last);
+            int start = board.nextDeparture(arrival + minTransfer);
+            int count = board.countBetween(arrival + minTransfer, arrival + layoverPolicy.maxTransferMinutes());
+
+            for (int k = 0; k < count; k++) {
+                int idx = (start + k) % board.size();
+                for (int c = Suffix.lowerBound(candidates, idx);
+                     c < candidates.size() && candidates.get(c).order[0] == idx; c++) {
+                    Suffix suffix = candidates.get(c);
+                    int next = suffix.legs[0];
+                    if (suffix.touches(prefix.visitedCities)) continue;
+                    if (!areCompatibleDays(last, next)) continue;
+                    if (!layoverPolicy.isTransferAllowed(arrival, table.departureMinute(next))) continue;
+
+                    int[] legs = Arrays.copyOf(prefix.legs, prefix.legs.length + suffix.legs.length);
+                    System.arraycopy(suffix.legs, 0, legs, prefix.legs.length, suffix.legs.length);
+                    Itinerary itinerary = itinerary(legs);
+                    if (itinerary.dayMask != 0 && (searchDayBit == 0 || (itinerary.dayMask & searchDayBit) != 0)) {
+                        foundConnections.add(itinerary);
+                    }
+                }
+            }
+        }
         return foundConnections;
     }
 
-    private LocalTime parseTime(String timeStr) {
+    /**
+     * Backward half of a bidirectional search: every simple chain of 1 to maxLegs legs that ends at
+     * the destination without touching the origin, keyed by the city its first leg leaves from.
+     * Each list is in the order the forward search would meet the chains.
+     */
+    private Map<Integer, List<Suffix>> findSuffixes(int originId, int targetId, int maxLegs,
+                                                    int minTransfer, LegFilter.Rows rows) {
+        Map<Integer, List<Suffix>> byCity = new HashMap<>();
+        if (targetId == RouteStore.UNKNOWN || boardsByArrivalCity[targetId] == null) return byCity;
+        DepartureBoard arrivals = boardsByArrivalCity[targetId];
+
+        List<Suffix> level = new ArrayList<>();
+        for (int a = 0; a < arrivals.size(); a++) {
+            int row = arrivals.position(a);
+            int from = table.departureCity(row);
+            if (from == targetId || from == originId || !rows.matches(row)) continue;
+            level.add(new Suffix(new int[]{row}, new int[]{from, targetId}, new int[]{boardIndexOf[row]}));
+        }
+
+        for (int depth = 1; !level.isEmpty(); depth++) {
+            for (Suffix suffix : level) {
+                byCity.computeIfAbsent(table.departureCity(suffix.legs[0]), k -> new ArrayList<>()).add(suffix);
+            }
+            if (depth == maxLegs) break;
+
+            List<Suffix> previous = level;
+            level = new ArrayList<>();
+            for (Suffix suffix : previous) {
+                int next = suffix.legs[0];
+                int city = table.departureCity(next);
+                DepartureBoard board = boardsByArrivalCity[city];
+                if (board == null) continue;
+
+                // Legs arriving between the longest allowed layover and the minimum transfer before the departure
+                int departure = table.departureMinute(next);
+                int from = departure - layoverPolicy.maxTransferMinutes();
+                int to = departure - minTransfer;
+                int start = board.nextDeparture(from);
+                int count = board.countBetween(from, to);
+
+                for (int k = 0; k < count; k++) {
+                    int row = board.position((start + k) % board.size());
+                    int legFrom = table.departureCity(row);
+                    if (legFrom == originId || suffix.visits(legFrom)) continue;
+                    if (!rows.matches(row)) continue;
+                    if (!areCompatibleDays(row, next)) continue;
+                    if (!layoverPolicy.isTransferAllowed(table.arrivalMinute(row), departure)) continue;
+
+                    // Rank of the old first leg within the window the forward search would open after this leg
+                    DepartureBoard via = boardsByDepartureCity[city];
+                    int windowStart = via.nextDeparture(table.arrivalMinute(row) + minTransfer);
+                    int[] order = new int[suffix.order.length + 1];
+                    order[0] = boardIndexOf[row];
+                    order[1] = Math.floorMod(suffix.order[0] - windowStart, via.size());
+                    System.arraycopy(suffix.order, 1, order, 2, suffix.order.length - 1);
+
+                    int[] legs = new int[suffix.legs.length + 1];
+                    legs[0] = row;
+                    System.arraycopy(suffix.legs, 0, legs, 1, suffix.legs.length);
+                    int[] cities = Arrays.copyOf(suffix.cities, suffix.cities.length + 1);
+                    cities[suffix.cities.length] = legFrom;
+                    level.add(new Suffix(legs, cities, order));
+                }
+            }
+        }
+
+        for (List<Suffix> list : byCity.values()) list.sort(Suffix.SEARCH_ORDER);
+        return byCity;
+    }
+
+    /**
+     * Direct and two-leg itineraries read from the two-hop index, in the order the
+     * depth-first search would produce them: by first leg on the origin's board, each direct
+     * leg followed by the two-leg combinations that start with it
+     */
+    private List<List<Connection>> findTwoLegConnections(TwoHopIndex index, int originId, int targetId,
+                                                         int minTransferMinutes, LegFilter filter,
+                                                         int minDepMinute, int maxDepMinute) {
+        List<List<Connection>> found = new ArrayList<>();
+        if (originId == RouteStore.UNKNOWN || targetId == RouteStore.UNKNOWN || originId == targetId) return found;
+        DepartureBoard board = boardsByDepartureCity[originId];
+        if (board == null) return found;
+
+        LegFilter.Rows rows = filter.on(table);
+        TwoHopIndex.Pairs pairs = index.lookup(originId, targetId);
+        DayOfWeek searchDay = filter.searchDay();
+        int dayBit = searchDay == null ? DayMask.ALL_BITS : DayMask.bit(searchDay);
+
+        int start = board.nextDeparture(minDepMinute);
+        int count = board.countBetween(minDepMinute, maxDepMinute);
+        int entry = pairs == null ? 0 : pairs.lowerBound(start);
+
+        for (int b = start; b < start + count; b++) {
+            int first = board.position(b);
+            if (table.arrivalCity(first) == targetId) {
+                if (rows.matches(first)) {
+                    found.add(itinerary(new int[]{first}));
+                }
+                continue;
+            }
+            if (pairs == null) continue;
+
+            // Entries are grouped by first leg, in board order
+            while (entry < pairs.size && pairs.firstBoardIndex[entry] < b) entry++;
+            if (entry == pairs.size || pairs.firstBoardIndex[entry] != b || !rows.matches(first)) continue;
+
+            for (; entry < pairs.size && pairs.firstBoardIndex[entry] == b; entry++) {
+                if (pairs.transferMinutes[entry] < minTransferMinutes) continue;
+                if ((pairs.dayMask[entry] & dayBit) == 0) continue;
+                int second = pairs.secondLeg[entry];
+                if (!rows.matches(second)) continue;
+                found.add(itinerary(new int[]{first, second}));
+            }
+        }
+        return found;
+    }
+
+    static LocalTime parseTime(String timeStr) {
         if (timeStr == null || timeStr.isEmpty()) {
             return null;
         }
@@ -71,233 +595,380 @@ public class ConnectionFinder {
         }
     }
 
-    private DayOfWeek parseDay(String day) {
-        if (day == null || day.isEmpty() || day.equalsIgnoreCase("Daily")) {
-            return null;
-        }
-
-        String normalized = day.trim().toLowerCase();
-        return switch (normalized) {
-            case "monday", "mon" -> DayOfWeek.MONDAY;
-            case "tuesday", "tue" -> DayOfWeek.TUESDAY;
-            case "wednesday", "wed" -> DayOfWeek.WEDNESDAY;
-            case "thursday", "thu" -> DayOfWeek.THURSDAY;
-            case "friday", "fri" -> DayOfWeek.FRIDAY;
-            case "saturday", "sat" -> DayOfWeek.SATURDAY;
-            case "sunday", "sun" -> DayOfWeek.SUNDAY;
-            default -> null;
-        };
-    }
-
     /**
      * Returns the valid days of the week for an entire connection path
      */
-    public static Set<DayOfWeek> getValidDaysForPath(List<Connection> path) {
-        if (path.isEmpty()) return new HashSet<>();
+    public static DayMask getValidDaysForPath(List<Connection> path) {
+        if (path instanceof Itinerary itinerary) return itinerary.validDays();
+        if (path.isEmpty()) return DayMask.NONE;
 
-        // Start with all days from the first leg
-        Set<DayOfWeek> validDays = new HashSet<>(path.get(0).daysOfOperation());
+        // Days the journey can start on, and the clock counted from the midnight of that day
+        int validDays = path.get(0).daysOfOperation().bits();
+        long clock = TimeUtils.minuteOfDay(path.get(0).depTime()) + path.get(0).durationMinutes();
 
-        // For each subsequent leg, filter to only compatible days
+        // Each later leg departs dayOf(clock) days after the start, so it must run on the start days shifted by that much
         for (int i = 1; i < path.size(); i++) {
             Connection prev = path.get(i - 1);
             Connection curr = path.get(i);
-            long transferTime = TimeUtils.minutesBetween(prev.arrTime(), curr.depTime());
-            boolean sameDay = transferTime < (24 * 60 - 60);
+            clock += TimeUtils.minutesBetween(prev.arrTime(), curr.depTime());
+            validDays &= DayMask.rotate(curr.daysOfOperation().bits(), -TimeUtils.dayOf(clock));
+            clock += curr.durationMinutes();
+        }
 
-            Set<DayOfWeek> compatibleDays = new HashSet<>();
+        return DayMask.of(validDays);
+    }
 
-            if (sameDay) {
-                // Same day: both must operate on the same day
-                for (DayOfWeek day : validDays) {
-                    if (curr.daysOfOperation().contains(day)) {
-                        compatibleDays.add(day);
-                    }
-                }
-            } else {
-                // Next day: previous leg's day must connect to next leg's next day
-                for (DayOfWeek day : validDays) {
-                    DayOfWeek nextDay = day == DayOfWeek.SUNDAY ? DayOfWeek.MONDAY : day.plus(1);
-                    if (curr.daysOfOperation().contains(nextDay)) {
-                        compatibleDays.add(day);
-                    }
-                }
-            }
+    /**
+     * {@link #getValidDaysForPath} on the first n legs of a path of table rows
+     */
+    private int validDays(int[] legs, int n) {
+        int validDays = table.dayMask(legs[0]);
+        long clock = table.arrivalOffset(legs[0]);
+        for (int i = 1; i < n; i++) {
+            clock += transferMinutes(legs[i - 1], legs[i]);
+            validDays &= DayMask.rotate(table.dayMask(legs[i]), -TimeUtils.dayOf(clock));
+            clock += table.durationMinutes(legs[i]);
+        }
+        return validDays;
+    }
+
+    private int transferMinutes(int previousRoute, int nextRoute) {
+        return TimeUtils.waitMinutes(table.arrivalMinute(previousRoute), table.departureMinute(nextRoute));
+    }
 
-            validDays = compatibleDays;
+    private Connection connection(int row) {
+        Connection connection = connections[row];
+        if (connection == null) {
+            connection = new Connection(table.record(row));
+            connections[row] = connection;
         }
+        return connection;
+    }
 
-        return validDays;
+    /**
+     * Wraps a sequence of table rows, computing its totals
+     */
+    private Itinerary itinerary(int[] legs) {
+        long minutes = 0, firstClassCents = 0, secondClassCents = 0;
+        for (int i = 0; i < legs.length; i++) {
+            minutes += table.durationMinutes(legs[i]);
+            if (i > 0) minutes += transferMinutes(legs[i - 1], legs[i]);
+            firstClassCents += table.firstClassCents(legs[i]);
+            secondClassCents += table.secondClassCents(legs[i]);
+        }
+        return itinerary(legs, minutes, firstClassCents, secondClassCents, validDays(legs, legs.length));
     }
 
-    //dfs for all possible paths
-    private void exploreConnections(String currentCity,
-                                    String targetCity,
-                                    int minTransferMinutes,
-                                    int maxConnections,
-                                    Set<String> visitedCities,
-                                    Deque<Record> currentPath,
-                                    List<List<Connection>> allConnections,
-                                    String trainType,
-                                    DayOfWeek searchDay,
-                                    Double maxFirstClassPrice,
-                                    Double maxSecondClassPrice,
-                                    LocalTime minDepTime,
-                                    LocalTime maxDepTime,
-                                    Integer maxDuration) {
-
-        if (currentPath.size() >= maxConnections) return;
-        visitedCities.add(currentCity.toLowerCase());
-
-        for (Record nextRoute : routesByDepartureCity.getOrDefault(currentCity.toLowerCase(), List.of())) {
-            String nextCity = nextRoute.getArrivalCity();
-
-            if (visitedCities.contains(nextCity.toLowerCase())) continue;
-
-            // Apply filters to each leg
-            if (!matchesFilters(nextRoute, trainType, searchDay, maxFirstClassPrice,
-                    maxSecondClassPrice, minDepTime, maxDepTime, maxDuration,
-                    currentPath.isEmpty())) {
-                continue;
+    private Itinerary itinerary(int[] legs, long minutes, long firstClassCents, long secondClassCents, int dayMask) {
+        return new Itinerary(legs, this::connection, minutes, firstClassCents, secondClassCents, dayMask);
+    }
+
+    /**
+     * Depth-first search for all simple paths, driven one result at a time.
+     * The recursion is kept on an explicit stack of frames, one per city on the current path,
+     * each holding a cursor into the feasible slice of that city's departure board.
+     */
+    private final class PathSearch extends Spliterators.AbstractSpliterator<List<Connection>> {
+        private final int targetCity;
+        private final int minTransferMinutes;
+        private final int maxConnections;
+        private final LegFilter.Rows rows;
+        private final int searchDayBit;
+        private final int minDepMinute;
+        private final int maxDepMinute;
+        private final TopItineraries bound;
+        private final int splitDepth;
+        private final Consumer<Prefix> prefixSink;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private final boolean[] visitedCities;
+        private int[] currentPath = new int[4];
+        private int depth;
+
+        PathSearch(int origin, int targetCity, int minTransferMinutes, int maxConnections,
+                   LegFilter filter, int minDepMinute, int maxDepMinute, TopItineraries bound) {
+            this(Prefix.start(origin, table.cityCount()), targetCity, minTransferMinutes, maxConnections,
+                    filter, minDepMinute, maxDepMinute, bound, 0, null);
+        }
+
+        /**
+         * Searches below the given prefix. With a prefix sink, paths that reach
+         * {@code splitDepth} legs without arriving are handed to the sink instead of being extended.
+         */
+        PathSearch(Prefix prefix, int targetCity, int minTransferMinutes, int maxConnections,
+                   LegFilter filter, int minDepMinute, int maxDepMinute, TopItineraries bound,
+                   int splitDepth, Consumer<Prefix> prefixSink) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            this.targetCity = targetCity;
+            this.minTransferMinutes = minTransferMinutes;
+            this.maxConnections = maxConnections;
+            this.rows = filter.on(table);
+            this.searchDayBit = filter.searchDay() == null ? 0 : DayMask.bit(filter.searchDay());
+            this.minDepMinute = minDepMinute;
+            this.maxDepMinute = maxDepMinute;
+            this.bound = bound;
+            this.splitDepth = splitDepth;
+            this.prefixSink = prefixSink;
+            this.visitedCities = prefix.visitedCities.clone();
+            for (int leg : prefix.legs) push(leg);
+            // Nothing can be found for an unknown destination
+            if (targetCity != RouteStore.UNKNOWN) {
+                enter(prefix.city, prefix.minutes, prefix.firstClassCents, prefix.secondClassCents,
+                        prefix.days, prefix.clock);
             }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<Connection>> action) {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.next == frame.count) {
+                    leave();
+                    continue;
+                }
 
-            if (!currentPath.isEmpty()) {
-                Record previousRoute = currentPath.peekLast();
-                long transferTime = TimeUtils.minutesBetween(previousRoute.getArrivalTime(),
-                        nextRoute.getDepartureTime());
+                DepartureBoard board = frame.board;
+                int nextRoute = board.position((frame.start + frame.next++) % board.size());
+                int nextCity = table.arrivalCity(nextRoute);
 
-                // Check minimum transfer time
-                if (transferTime < minTransferMinutes) continue;
+                if (visitedCities[nextCity]) continue;
 
-                // Check if days of operation are compatible
-                if (!areCompatibleDays(previousRoute, nextRoute, transferTime)) {
+                // Apply filters to each leg
+                if (!rows.matches(nextRoute)) {
                     continue;
                 }
-            }
 
-            currentPath.addLast(nextRoute);
+                long totalMinutes = frame.minutes + table.durationMinutes(nextRoute);
+                long departure = table.departureMinute(nextRoute);
+                if (depth > 0) {
+                    int previousRoute = currentPath[depth - 1];
+                    int transferTime = transferMinutes(previousRoute, nextRoute);
 
-            if (nextCity.equalsIgnoreCase(targetCity)) {
-                List<Connection> validConnection = currentPath.stream()
-                        .map(Connection::new)
-                        .collect(Collectors.toList());
+                    // Enforce the layover policy as soon as the transfer is known
+                    if (!layoverPolicy.isTransferAllowed(table.arrivalMinute(previousRoute),
+                            table.departureMinute(nextRoute))) {
+                        continue;
+                    }
+                    totalMinutes += transferTime;
+                    departure = frame.clock + transferTime;
+                }
+
+                // Keep the start days on which this leg runs on the day it is reached
+                int days = frame.days & DayMask.rotate(table.dayMask(nextRoute), -TimeUtils.dayOf(departure));
+                if (days == 0) {
+                    continue;
+                }
+                long clock = departure + table.durationMinutes(nextRoute);
 
-                // Enforce layover policy for the whole path
-                if (layoverPolicy.isPathAllowed(validConnection)) {
-                    // Final validation: check if the entire path has valid operating days
-                    if (searchDay == null || getValidDaysForPath(validConnection).contains(searchDay)) {
-                        allConnections.add(validConnection);
+                // Durations and fares only grow, so a prefix that already ranks below the k-th best is dropped
+                long firstClassCents = frame.firstClassCents + table.firstClassCents(nextRoute);
+                long secondClassCents = frame.secondClassCents + table.secondClassCents(nextRoute);
+                if (bound != null && !bound.canImprove(bound.ranking().primaryKey(
+                        totalMinutes, firstClassCents / 100.0, secondClassCents / 100.0))) {
+                    continue;
+                }
+
+                push(nextRoute);
+
+                if (nextCity == targetCity) {
+                    // The journey must be able to start on the requested day
+                    boolean valid = searchDayBit == 0 || (days & searchDayBit) != 0;
+                    Itinerary found = valid ? itinerary(Arrays.copyOf(currentPath, depth),
+                            totalMinutes, firstClassCents, secondClassCents, days) : null;
+                    depth--;
+                    if (valid) {
+                        action.accept(found);
+                        return true;
                     }
+                } else if (!enter(nextCity, totalMinutes, firstClassCents, secondClassCents, days, clock)) {
+                    depth--;
                 }
+            }
+            return false;
+        }
+
+        private void push(int route) {
+            if (depth == currentPath.length) currentPath = Arrays.copyOf(currentPath, depth * 2);
+            currentPath[depth++] = route;
+        }
+
+        /**
+         * Pushes a frame for the city reached by the last leg of the current path,
+         * together with the path's running totals, the days it can start on and its arrival clock
+         */
+        private boolean enter(int city, long minutes, long firstClassCents, long secondClassCents,
+                              int days, long clock) {
+            if (depth >= maxConnections) return false;
+            DepartureBoard board = city == RouteStore.UNKNOWN ? null : boardsByDepartureCity[city];
+            if (board == null) return false;
+
+            if (prefixSink != null && depth == splitDepth) {
+                prefixSink.accept(new Prefix(Arrays.copyOf(currentPath, depth), visitedCities.clone(),
+                        city, minutes, firstClassCents, secondClassCents, days, clock));
+                return false;
+            }
+
+            // Only the feasible slice of the board is expanded: the requested departure window for
+            // the first leg, and [arrival + min transfer, arrival + longest allowed layover] afterwards
+            int from, to;
+            if (depth == 0) {
+                from = minDepMinute;
+                to = maxDepMinute;
             } else {
-                exploreConnections(nextCity, targetCity, minTransferMinutes,
-                        maxConnections, visitedCities, currentPath, allConnections,
-                        trainType, searchDay, maxFirstClassPrice, maxSecondClassPrice,
-                        minDepTime, maxDepTime, maxDuration);
+                int arrival = table.arrivalMinute(currentPath[depth - 1]);
+                from = arrival + Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+                to = arrival + layoverPolicy.maxTransferMinutes();
             }
 
-            currentPath.removeLast();
+            visitedCities[city] = true;
+            stack.push(new Frame(city, board, board.nextDeparture(from), board.countBetween(from, to),
+                    minutes, firstClassCents, secondClassCents, days, clock));
+            return true;
         }
 
-        visitedCities.remove(currentCity.toLowerCase());
+        /**
+         * Pops the top frame and the leg that led to it
+         */
+        private void leave() {
+            Frame frame = stack.pop();
+            visitedCities[frame.city] = false;
+            if (!stack.isEmpty()) depth--;
+        }
     }
 
     /**
-     * Checks if a route matches the given filters
+     * Snapshot of a partial path from which an independent search can continue
      */
-    private boolean matchesFilters(Record route, String trainType, DayOfWeek searchDay,
-                                   Double maxFirstClassPrice, Double maxSecondClassPrice,
-                                   LocalTime minDepTime, LocalTime maxDepTime,
-                                   Integer maxDuration, boolean isFirstLeg) {
-
-        // Train type filter
-        if (trainType != null && !trainType.isEmpty() &&
-                !route.getTrainType().equalsIgnoreCase(trainType)) {
-            return false;
+    private static final class Prefix {
+        final int[] legs;
+        final boolean[] visitedCities;
+        final int city;
+        final long minutes;
+        final long firstClassCents;
+        final long secondClassCents;
+        final int days;
+        final long clock;
+
+        Prefix(int[] legs, boolean[] visitedCities, int city,
+               long minutes, long firstClassCents, long secondClassCents, int days, long clock) {
+            this.legs = legs;
+            this.visitedCities = visitedCities;
+            this.city = city;
+            this.minutes = minutes;
+            this.firstClassCents = firstClassCents;
+            this.secondClassCents = secondClassCents;
+            this.days = days;
+            this.clock = clock;
         }
 
-        // Day of operation filter
-        if (searchDay != null && !route.getDaysOfOperation().contains(searchDay)) {
-            return false;
+        static Prefix start(int origin, int cityCount) {
+            return new Prefix(new int[0], new boolean[cityCount], origin, 0, 0, 0, DayMask.ALL_BITS, 0);
         }
+    }
 
-        // First class price filter
-        if (maxFirstClassPrice != null && route.getFirstClassRate() > maxFirstClassPrice) {
-            return false;
+    /**
+     * Either an itinerary found above the split depth or a prefix still to be searched
+     */
+    private static final class Branch {
+        final List<Connection> found;
+        final Prefix prefix;
+
+        Branch(List<Connection> found, Prefix prefix) {
+            this.found = found;
+            this.prefix = prefix;
         }
+    }
 
-        // Second class price filter
-        if (maxSecondClassPrice != null && route.getSecondClassRate() > maxSecondClassPrice) {
-            return false;
+    /**
+     * Chain of legs ending at the destination, built backwards. {@code order} holds the first leg's
+     * index on its departure board followed by each later leg's rank within the transfer window
+     * opened by the leg before it, which is the order the forward search visits chains in.
+     */
+    private static final class Suffix {
+        static final Comparator<Suffix> SEARCH_ORDER = (a, b) -> Arrays.compare(a.order, b.order);
+
+        final int[] legs;
+        final int[] cities;
+        final int[] order;
+
+        Suffix(int[] legs, int[] cities, int[] order) {
+            this.legs = legs;
+            this.cities = cities;
+            this.order = order;
         }
 
-        // Departure time filters (only apply to first leg)
-        if (isFirstLeg) {
-            if (minDepTime != null && route.getDepartureTime().isBefore(minDepTime)) {
-                return false;
-            }
-            if (maxDepTime != null && route.getDepartureTime().isAfter(maxDepTime)) {
-                return false;
+        boolean visits(int city) {
+            for (int c : cities) {
+                if (c == city) return true;
             }
+            return false;
         }
 
-        // Duration filter (applies to each individual leg)
-        if (maxDuration != null) {
-            long duration = TimeUtils.minutesBetween(route.getDepartureTime(), route.getArrivalTime());
-            if (duration > maxDuration) {
-                return false;
+        boolean touches(boolean[] visited) {
+            for (int c : cities) {
+                if (visited[c]) return true;
             }
+            return false;
         }
 
-        return true;
-    }
-
-    /**
-     * Checks if two consecutive routes have compatible operating days.
-     * Takes into account whether the connection happens on the same day or next day.
-     */
-    private boolean areCompatibleDays(Record previousRoute, Record nextRoute, long transferMinutes) {
-        Set<DayOfWeek> prevDays = previousRoute.getDaysOfOperation();
-        Set<DayOfWeek> nextDays = nextRoute.getDaysOfOperation();
-
-        // Check if the transfer happens on the same day or crosses midnight
-        boolean sameDay = transferMinutes < (24 * 60 - 60); // Less than ~23 hours means same day
-
-        if (sameDay) {
-            // For same-day connections, both routes must operate on at least one common day
-            for (DayOfWeek day : prevDays) {
-                if (nextDays.contains(day)) {
-                    return true;
-                }
-            }
-        } else {
-            // For next-day connections, previous route day must connect to next route's next day
-            for (DayOfWeek day : prevDays) {
-                DayOfWeek nextDay = getNextDay(day);
-                if (nextDays.contains(nextDay)) {
-                    return true;
-                }
+        /**
+         * Index of the first suffix whose first leg sits at or after the given board index
+         */
+        static int lowerBound(List<Suffix> sorted, int boardIndex) {
+            int lo = 0, hi = sorted.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted.get(mid).order[0] < boardIndex) lo = mid + 1;
+                else hi = mid;
             }
+            return lo;
         }
+    }
 
-        return false;
+    private static final class Frame {
+        final int city;
+        final DepartureBoard board;
+        final int start;
+        final int count;
+        final long minutes;
+        final long firstClassCents;
+        final long secondClassCents;
+        final int days;
+        final long clock;
+        int next;
+
+        Frame(int city, DepartureBoard board, int start, int count,
+              long minutes, long firstClassCents, long secondClassCents, int days, long clock) {
+            this.city = city;
+            this.board = board;
+            this.start = start;
+            this.count = count;
+            this.minutes = minutes;
+            this.firstClassCents = firstClassCents;
+            this.secondClassCents = secondClassCents;
+            this.days = days;
+            this.clock = clock;
+        }
     }
 
     /**
-     * Gets the next day of the week
+     * Checks if two consecutive routes have compatible operating days: the next route departs
+     * as many days after the previous one as its arrival plus the transfer spans, counting
+     * overnight legs and transfers past midnight
      */
-    private DayOfWeek getNextDay(DayOfWeek day) {
-        return day == DayOfWeek.SUNDAY ? DayOfWeek.MONDAY : day.plus(1);
+    private boolean areCompatibleDays(int previousRoute, int nextRoute) {
+        int shift = TimeUtils.dayOf(table.arrivalOffset(previousRoute) + transferMinutes(previousRoute, nextRoute));
+        return (table.dayMask(previousRoute) & DayMask.rotate(table.dayMask(nextRoute), -shift)) != 0;
     }
 
     //helper methods below
     public static long calculateTotalDuration(List<Connection> path) {
+        if (path instanceof Itinerary itinerary) return itinerary.minutes;
         if (path.isEmpty()) return 0;
         long totalMinutes = 0;
 
         for (int i = 0; i < path.size(); i++) {
             var leg = path.get(i);
-            totalMinutes += TimeUtils.minutesBetween(leg.depTime(), leg.arrTime());
+            totalMinutes += leg.durationMinutes();
 
             if (i < path.size() - 1) {
                 var nextLeg = path.get(i + 1);
@@ -308,10 +979,12 @@ public class ConnectionFinder {
     }
 
     public static double calculateFirstClassTotal(List<Connection> path) {
+        if (path instanceof Itinerary itinerary) return itinerary.firstClassTotal();
         return path.stream().mapToDouble(Connection::firstRate).sum();
     }
 
     public static double calculateSecondClassTotal(List<Connection> path) {
+        if (path instanceof Itinerary itinerary) return itinerary.secondClassTotal();
         return path.stream().mapToDouble(Connection::secondRate).sum();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,390 @@
+package service;
+
+import model.Connection;
+import model.DayMask;
+import model.Record;
+import model.RouteStore;
+import model.RouteTable;
+import model.TimeUtils;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Routing engine based on the Connection Scan Algorithm.
+ * All routes are kept in a single array sorted by departure minute; a query scans that
+ * array once per day of the search horizon, so the cost does not grow with the number of
+ * transfers the answer needs. Transfers follow the {@link LayoverPolicy}, and operating days
+ * are tracked as a bit mask of the days on which a partial journey can run. A query keeps
+ * state only for the route instances it reaches, so its memory follows the part of the network
+ * it scans rather than the size of the timetable.
+ */
+public class ConnectionScanRouter {
+    // Journeys may run into the following (or start on the previous) day
+    private static final int HORIZON_DAYS = 2;
+    private static final int MINUTES_PER_DAY = DepartureBoard.MINUTES_PER_DAY;
+    private static final int NO_PARENT = -1;
+
+    private final LayoverPolicy layoverPolicy = LayoverPolicy.getInstance();
+    private final RouteStore table;
+    // Table row of each scanned position
+    private final int[] row;
+    private final int[] departureMinute;
+    private final int[] arrivalMinute;
+    private final int[] duration;
+    private final int[] dayMask;
+    private final int[] fromCity;
+    private final int[] toCity;
+    private final int maxLegDuration;
+
+    public ConnectionScanRouter(List<Record> allRoutes) {
+        this(RouteTable.of(allRoutes));
+    }
+
+    public ConnectionScanRouter(RouteStore table) {
+        this(table, IntStream.range(0, table.size()).boxed()
+                .sorted(Comparator.comparingInt(table::departureMinute))
+                .mapToInt(Integer::intValue)
+                .toArray());
+    }
+
+    /**
+     * @param row every row of the table, ordered by departure minute
+     */
+    private ConnectionScanRouter(RouteStore table, int[] row) {
+        this.table = table;
+        int n = table.size();
+        this.row = row;
+        this.departureMinute = new int[n];
+        this.arrivalMinute = new int[n];
+        this.duration = new int[n];
+        this.dayMask = new int[n];
+        this.fromCity = new int[n];
+        this.toCity = new int[n];
+
+        int longest = 0;
+        for (int i = 0; i < n; i++) {
+            int r = row[i];
+            departureMinute[i] = table.departureMinute(r);
+            arrivalMinute[i] = table.arrivalMinute(r);
+            duration[i] = table.durationMinutes(r);
+            dayMask[i] = table.dayMask(r);
+            fromCity[i] = table.departureCity(r);
+            toCity[i] = table.arrivalCity(r);
+            longest = Math.max(longest, duration[i]);
+        }
+        this.maxLegDuration = longest;
+    }
+
+    /**
+     * A router over a patched table that merges the changed rows into this router's scan order
+     * instead of sorting every row again
+     */
+    public ConnectionScanRouter patched(RouteTable.Patch patch, RouteStore next) {
+        DepartureBoard order = new DepartureBoard(row, table::departureMinute)
+                .patched(patch.changedRows(), next.size(), next::departureMinute);
+        int[] nextRow = new int[order.size()];
+        for (int i = 0; i < nextRow.length; i++) nextRow[i] = order.position(i);
+        return new ConnectionScanRouter(next, nextRow);
+    }
+
+    public List<Connection> earliestArrival(String origin, String destination, int minTransferMinutes) {
+        return earliestArrival(origin, destination, minTransferMinutes,
+                null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Finds the journey that reaches the destination as early as possible when leaving the
+     * origin within [minDepartureTime, maxDepartureTime] on the given day.
+     * Returns an empty list when no journey exists within the search horizon.
+     */
+    public List<Connection> earliestArrival(String origin,
+                                            String destination,
+                                            int minTransferMinutes,
+                                            String trainType,
+                                            String day,
+                                            Double maxFirstClassPrice,
+                                            Double maxSecondClassPrice,
+                                            String minDepartureTime,
+                                            String maxDepartureTime,
+                                            Integer maxDuration) {
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+        if (originId == RouteStore.UNKNOWN || targetId == RouteStore.UNKNOWN || originId == targetId) return List.of();
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        LegFilter.Rows legAllowed = filter.on(table);
+        int startMask = filter.searchDay() == null ? DayMask.ALL_BITS : DayMask.bit(filter.searchDay());
+        LocalTime minDep = ConnectionFinder.parseTime(minDepartureTime);
+        LocalTime maxDep = ConnectionFinder.parseTime(maxDepartureTime);
+        int earliest = minDep == null ? 0 : TimeUtils.minuteOfDay(minDep);
+        int latest = maxDep == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDep);
+        int minTransfer = Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+
+        int n = row.length;
+        Labels labels = new Labels();
+        int[] parent = new int[7];
+        ArrivalList[] arrivals = new ArrivalList[table.cityCount()];
+        int best = -1;
+        int bestArrival = Integer.MAX_VALUE;
+
+        scan:
+        for (int d = 0; d < HORIZON_DAYS; d++) {
+            // Nothing before the earliest departure can be reached on the first day
+            for (int i = d == 0 ? firstDepartureAtOrAfter(earliest) : 0; i < n; i++) {
+                int dep = d * MINUTES_PER_DAY + departureMinute[i];
+                // Everything after this departs too late to beat the best arrival
+                if (dep >= bestArrival) break scan;
+
+                boolean start = d == 0 && fromCity[i] == originId && dep >= earliest && dep <= latest;
+                ArrivalList waiting = arrivals[fromCity[i]];
+                if (!start && (waiting == null || waiting.size == 0)) continue;
+                if (!legAllowed.matches(row[i])) continue;
+
+                int e = d * n + i;
+                int runsOn = DayMask.rotate(dayMask[i], -d);
+                int mask = 0;
+
+                if (start) {
+                    mask = runsOn & startMask;
+                    Arrays.fill(parent, NO_PARENT);
+                }
+
+                if (waiting != null) {
+                    for (int k = 0; k < waiting.size; ) {
+                        int p = waiting.items[k];
+                        int arr = arrivalOf(labels.instance[p]);
+                        if (arr + layoverPolicy.maxTransferMinutes() < dep) {
+                            // Arrived too long ago to connect to this or any later departure
+                            waiting.removeAt(k);
+                            continue;
+                        }
+                        k++;
+                        if (dep - arr < minTransfer) continue;
+                        if (!layoverPolicy.isTransferAllowed(arrivalMinute[labels.instance[p] % n], departureMinute[i])) continue;
+                        int added = withoutRevisits(labels, p, labels.days[p] & runsOn & ~mask, toCity[i]);
+                        for (int b = 0; b < 7; b++) {
+                            if ((added & (1 << b)) != 0) parent[b] = p;
+                        }
+                        mask |= added;
+                    }
+                }
+
+                if (mask == 0) continue;
+                int label = labels.add(e, mask, parent);
+
+                int arr = dep + duration[i];
+                if (toCity[i] == targetId) {
+                    if (arr < bestArrival) {
+                        bestArrival = arr;
+                        best = label;
+                    }
+                } else {
+                    if (arrivals[toCity[i]] == null) arrivals[toCity[i]] = new ArrivalList();
+                    arrivals[toCity[i]].add(label);
+                }
+            }
+        }
+
+        if (best < 0) return List.of();
+        List<Connection> journey = new ArrayList<>();
+        int b = Integer.numberOfTrailingZeros(labels.days[best]);
+        for (int l = best; l != NO_PARENT; l = labels.link(l, b)) {
+            journey.add(new Connection(table.record(row[labels.instance[l] % n])));
+        }
+        Collections.reverse(journey);
+        return journey;
+    }
+
+    public List<Connection> latestDeparture(String origin, String destination, int minTransferMinutes,
+                                            String day, String arriveBy) {
+        return latestDeparture(origin, destination, minTransferMinutes,
+                null, day, null, null, arriveBy, null);
+    }
+
+    /**
+     * Finds the journey that leaves the origin as late as possible while still reaching the
+     * destination by the given time on the given day. Scans the same array backwards.
+     * Returns an empty list when no journey exists within the search horizon.
+     */
+    public List<Connection> latestDeparture(String origin,
+                                            String destination,
+                                            int minTransferMinutes,
+                                            String trainType,
+                                            String day,
+                                            Double maxFirstClassPrice,
+                                            Double maxSecondClassPrice,
+                                            String arriveBy,
+                                            Integer maxDuration) {
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+        if (originId == RouteStore.UNKNOWN || targetId == RouteStore.UNKNOWN || originId == targetId) return List.of();
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        LegFilter.Rows legAllowed = filter.on(table);
+        int endMask = filter.searchDay() == null ? DayMask.ALL_BITS : DayMask.bit(filter.searchDay());
+        LocalTime deadline = ConnectionFinder.parseTime(arriveBy);
+        int arriveByMinute = deadline == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(deadline);
+        int minTransfer = Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+
+        // Day offsets run from -(HORIZON_DAYS - 1) to 0 relative to the arrival day
+        int n = row.length;
+        Labels labels = new Labels();
+        int[] child = new int[7];
+        ArrivalList[] departures = new ArrivalList[table.cityCount()];
+
+        for (int d = HORIZON_DAYS - 1; d >= 0; d--) {
+            int offset = d - (HORIZON_DAYS - 1);
+            for (int i = n - 1; i >= 0; i--) {
+                int e = d * n + i;
+                int dep = offset * MINUTES_PER_DAY + departureMinute[i];
+                int arr = dep + duration[i];
+
+                boolean end = toCity[i] == targetId && arr >= 0 && arr <= arriveByMinute;
+                ArrivalList onward = departures[toCity[i]];
+                if (!end && (onward == null || onward.size == 0)) continue;
+                if (!legAllowed.matches(row[i])) continue;
+
+                int runsOn = DayMask.rotate(dayMask[i], -offset);
+                int mask = 0;
+
+                if (end) {
+                    mask = runsOn & endMask;
+                    Arrays.fill(child, NO_PARENT);
+                }
+
+                if (onward != null) {
+                    for (int k = 0; k < onward.size; ) {
+                        int q = onward.items[k];
+                        int qDep = departureOf(labels.instance[q]);
+                        if (qDep - layoverPolicy.maxTransferMinutes() > dep + maxLegDuration) {
+                            // No remaining (earlier) departure can arrive late enough to use it
+                            onward.removeAt(k);
+                            continue;
+                        }
+                        k++;
+                        if (qDep - arr < minTransfer || qDep - arr > layoverPolicy.maxTransferMinutes()) continue;
+                        if (!layoverPolicy.isTransferAllowed(arrivalMinute[i], departureMinute[labels.instance[q] % n])) continue;
+                        int added = withoutRevisits(labels, q, labels.days[q] & runsOn & ~mask, fromCity[i]);
+                        for (int b = 0; b < 7; b++) {
+                            if ((added & (1 << b)) != 0) child[b] = q;
+                        }
+                        mask |= added;
+                    }
+                }
+
+                if (mask == 0) continue;
+                int label = labels.add(e, mask, child);
+
+                if (fromCity[i] == originId) {
+                    // Scanning backwards, the first departure reached from the origin is the latest one
+                    List<Connection> journey = new ArrayList<>();
+                    int b = Integer.numberOfTrailingZeros(mask);
+                    for (int l = label; l != NO_PARENT; l = labels.link(l, b)) {
+                        journey.add(new Connection(table.record(row[labels.instance[l] % n])));
+                    }
+                    return journey;
+                }
+                if (departures[fromCity[i]] == null) departures[fromCity[i]] = new ArrivalList();
+                departures[fromCity[i]].add(label);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * The day bits of a partial journey, ending (or in a backward scan starting) with the given
+     * label, on which it does not already pass through the city; like the depth-first search, a
+     * journey never visits a city twice
+     */
+    private int withoutRevisits(Labels labels, int label, int days, int city) {
+        int n = row.length;
+        for (int bits = days; bits != 0; bits &= bits - 1) {
+            int b = Integer.numberOfTrailingZeros(bits);
+            for (int l = label; l != NO_PARENT; l = labels.link(l, b)) {
+                int x = labels.instance[l] % n;
+                if (fromCity[x] == city || toCity[x] == city) {
+                    days &= ~(1 << b);
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+
+    private int firstDepartureAtOrAfter(int minute) {
+        int lo = 0, hi = departureMinute.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departureMinute[mid] < minute) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Absolute departure of an instance in a backward scan (offsets end at the arrival day)
+     */
+    private int departureOf(int instance) {
+        int n = row.length;
+        int offset = instance / n - (HORIZON_DAYS - 1);
+        return offset * MINUTES_PER_DAY + departureMinute[instance % n];
+    }
+
+    /**
+     * Absolute arrival of an instance in a forward scan (offsets start at the departure day)
+     */
+    private int arrivalOf(int instance) {
+        int n = row.length;
+        return (instance / n) * MINUTES_PER_DAY + departureMinute[instance % n] + duration[instance % n];
+    }
+
+    /**
+     * Instances reached by one scan, numbered in the order they were reached, with their day bits
+     * and, per day, the label they were reached from (or, scanning backwards, continue with)
+     */
+    private static final class Labels {
+        int[] instance = new int[64];
+        int[] days = new int[64];
+        int[] links = new int[64 * 7];
+        int size;
+
+        int add(int e, int mask, int[] linkPerDay) {
+            if (size == instance.length) {
+                instance = Arrays.copyOf(instance, size * 2);
+                days = Arrays.copyOf(days, size * 2);
+                links = Arrays.copyOf(links, size * 2 * 7);
+            }
+            instance[size] = e;
+            days[size] = mask;
+            System.arraycopy(linkPerDay, 0, links, size * 7, 7);
+            return size++;
+        }
+
+        int link(int label, int day) {
+            return links[label * 7 + day];
+        }
+    }
+
+    /**
+     * Small growable list of scanned labels waiting at a city
+     */
+    private static final class ArrivalList {
+        int[] items = new int[8];
+        int size;
+
+        void add(int e) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = e;
+        }
+
+        void removeAt(int k) {
+            items[k] = items[--size];
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package service;
 
 import model.Connection;
+
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
@@ -10,23 +12,41 @@ public class ConnectionSorter {
     //all ascending order
 
     public static void sortByDuration(List<List<Connection>> connectionPaths) {
-        connectionPaths.sort(
-                Comparator.comparingLong(ConnectionFinder::calculateTotalDuration)
-                        .thenComparingDouble(ConnectionFinder::calculateSecondClassTotal)
-        );
+        sort(connectionPaths, ItineraryRanking.DURATION);
     }
 
     public static void sortByFirstClassPrice(List<List<Connection>> connectionPaths) {
-        connectionPaths.sort(
-                Comparator.comparingDouble(ConnectionFinder::calculateFirstClassTotal)
-                        .thenComparingLong(ConnectionFinder::calculateTotalDuration)
-        );
+        sort(connectionPaths, ItineraryRanking.FIRST_CLASS_PRICE);
     }
 
     public static void sortBySecondClassPrice(List<List<Connection>> connectionPaths) {
-        connectionPaths.sort(
-                Comparator.comparingDouble(ConnectionFinder::calculateSecondClassTotal)
-                        .thenComparingLong(ConnectionFinder::calculateTotalDuration)
-        );
+        sort(connectionPaths, ItineraryRanking.SECOND_CLASS_PRICE);
+    }
+
+    /**
+     * Sorts in place, computing the sort keys of each path once instead of on every comparison
+     */
+    public static void sort(List<List<Connection>> connectionPaths, ItineraryRanking ranking) {
+        List<Keyed> keyed = new ArrayList<>(connectionPaths.size());
+        for (List<Connection> path : connectionPaths) {
+            double[] keys = ranking.keys(path);
+            keyed.add(new Keyed(path, keys[0], keys[1]));
+        }
+        keyed.sort(Comparator.comparingDouble((Keyed k) -> k.primary).thenComparingDouble(k -> k.secondary));
+        for (int i = 0; i < keyed.size(); i++) {
+            connectionPaths.set(i, keyed.get(i).path);
+        }
+    }
+
+    private static final class Keyed {
+        final List<Connection> path;
+        final double primary;
+        final double secondary;
+
+        Keyed(List<Connection> path, double primary, double secondary) {
+            this.path = path;
+            this.primary = primary;
+            this.secondary = secondary;
+        }
     }
 }
@@ -0,0 +1,204 @@
+package service;
+
+import model.RouteStore;
+import model.TimeUtils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Departures of one station ordered by departure minute of day.
+ * Entries are route positions in the source list, kept next to a primitive array of
+ * their departure minutes so that time windows are answered with binary search.
+ * Windows may wrap past midnight.
+ */
+public final class DepartureBoard {
+    public static final int MINUTES_PER_DAY = TimeUtils.MINUTES_PER_DAY;
+
+    private final int[] positions;
+    private final int[] minutes;
+
+    /**
+     * @param positions route positions departing from this station
+     * @param minuteOf departure minute of day for a route position
+     */
+    public DepartureBoard(List<Integer> positions, IntUnaryOperator minuteOf) {
+        int n = positions.size();
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            int position = positions.get(i);
+            packed[i] = ((long) minuteOf.applyAsInt(position) << 32) | position;
+        }
+        // Sort by minute, ties keep source order
+        Arrays.sort(packed);
+
+        this.positions = new int[n];
+        this.minutes = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.minutes[i] = (int) (packed[i] >>> 32);
+            this.positions[i] = (int) packed[i];
+        }
+    }
+
+    /**
+     * @param positions route positions already ordered by minute of day
+     * @param minuteOf minute of day for a route position
+     */
+    public DepartureBoard(int[] positions, IntUnaryOperator minuteOf) {
+        this.positions = positions;
+        this.minutes = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) minutes[i] = minuteOf.applyAsInt(positions[i]);
+    }
+
+    private DepartureBoard(int[] positions, int[] minutes) {
+        this.positions = positions;
+        this.minutes = minutes;
+    }
+
+    /**
+     * One board per city of the table, indexed by city id, from its time-ordered departures
+     */
+    public static DepartureBoard[] byDepartureCity(RouteStore table) {
+        DepartureBoard[] boards = new DepartureBoard[table.cityCount()];
+        for (int c = 0; c < boards.length; c++) {
+            boards[c] = new DepartureBoard(table.departuresFrom(c), table::departureMinute);
+        }
+        return boards;
+    }
+
+    /**
+     * Departure boards of a patched table: the boards of cities the patch did not touch are
+     * shared, since their rows keep their numbers, and only the touched cities' are rebuilt
+     */
+    public static DepartureBoard[] patchedByDepartureCity(DepartureBoard[] boards, RouteStore next, BitSet touchedCities) {
+        DepartureBoard[] patched = Arrays.copyOf(boards, next.cityCount());
+        for (int c = 0; c < patched.length; c++) {
+            if (patched[c] == null || touchedCities.get(c)) {
+                patched[c] = new DepartureBoard(next.departuresFrom(c), next::departureMinute);
+            }
+        }
+        return patched;
+    }
+
+    /**
+     * One board per city of the table ordered by arrival minute, for searches that run backwards
+     */
+    public static DepartureBoard[] byArrivalCity(RouteStore table) {
+        DepartureBoard[] boards = new DepartureBoard[table.cityCount()];
+        for (int c = 0; c < boards.length; c++) {
+            boards[c] = new DepartureBoard(table.arrivalsAt(c), table::arrivalMinute);
+        }
+        return boards;
+    }
+
+    /**
+     * This board, holding every row of its table, after a patch of the table: positions that changed or are no longer below size
+     * are dropped, and the changed positions below size are merged back in at their new minute.
+     * Ties keep position order, like a board built from scratch.
+     */
+    public DepartureBoard patched(BitSet changedPositions, int size, IntUnaryOperator minuteOf) {
+        long[] added = new long[changedPositions.cardinality()];
+        int addedCount = 0;
+        for (int p = changedPositions.nextSetBit(0); p >= 0 && p < size; p = changedPositions.nextSetBit(p + 1)) {
+            added[addedCount++] = ((long) minuteOf.applyAsInt(p) << 32) | p;
+        }
+        Arrays.sort(added, 0, addedCount);
+
+        int[] nextPositions = new int[size];
+        int[] nextMinutes = new int[size];
+        int n = 0;
+        int a = 0;
+        for (int i = 0; i < positions.length; i++) {
+            int p = positions[i];
+            if (p >= size || changedPositions.get(p)) continue;
+            long kept = ((long) minutes[i] << 32) | p;
+            for (; a < addedCount && added[a] < kept; a++) {
+                nextMinutes[n] = (int) (added[a] >>> 32);
+                nextPositions[n++] = (int) added[a];
+            }
+            nextMinutes[n] = minutes[i];
+            nextPositions[n++] = p;
+        }
+        for (; a < addedCount; a++) {
+            nextMinutes[n] = (int) (added[a] >>> 32);
+            nextPositions[n++] = (int) added[a];
+        }
+        return new DepartureBoard(Arrays.copyOf(nextPositions, n), Arrays.copyOf(nextMinutes, n));
+    }
+
+    public int size() {
+        return positions.length;
+    }
+
+    public int position(int i) {
+        return positions[i];
+    }
+
+    public int minute(int i) {
+        return minutes[i];
+    }
+
+    /**
+     * Index of the first departure at or after the given minute of day
+     */
+    public int lowerBound(int minute) {
+        int lo = 0, hi = minutes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minutes[mid] < minute) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Index one past the last departure at or before the given minute of day
+     */
+    public int upperBound(int minute) {
+        int lo = 0, hi = minutes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minutes[mid] <= minute) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the next departure at or after the given minute, wrapping to the
+     * first departure of the day when nothing is left before midnight
+     */
+    public int nextDeparture(int minute) {
+        int i = lowerBound(Math.floorMod(minute, MINUTES_PER_DAY));
+        return i == minutes.length ? 0 : i;
+    }
+
+    /**
+     * Number of departures in the inclusive window [fromMinute, toMinute].
+     * The window may extend past midnight; iterate it from {@link #nextDeparture(int)}
+     * with indices taken modulo {@link #size()}.
+     */
+    public int countBetween(int fromMinute, int toMinute) {
+        if (toMinute < fromMinute) return 0;
+        if (toMinute - fromMinute >= MINUTES_PER_DAY - 1) return minutes.length;
+
+        int from = Math.floorMod(fromMinute, MINUTES_PER_DAY);
+        int to = Math.floorMod(toMinute, MINUTES_PER_DAY);
+        if (from <= to) {
+            return upperBound(to) - lowerBound(from);
+        }
+        return (minutes.length - lowerBound(from)) + upperBound(to);
+    }
+
+    /**
+     * Route positions departing in the window [fromMinute, toMinute] (no wrap), ascending by position
+     */
+    public int[] positionsBetween(int fromMinute, int toMinute) {
+        if (toMinute < fromMinute) return new int[0];
+        int[] slice = Arrays.copyOfRange(positions, lowerBound(fromMinute), upperBound(toMinute));
+        Arrays.sort(slice);
+        return slice;
+    }
+}
@@ -0,0 +1,272 @@
+package service;
+
+import model.Connection;
+import model.DayMask;
+import model.Record;
+import model.RouteStore;
+import model.RouteTable;
+import model.TimeUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Goal-directed (A*) search for the fastest itineraries.
+ * For every destination a lower bound on the remaining travel time is precomputed from every
+ * city, using the shortest leg between each pair of cities plus the minimum transfer. Partial
+ * itineraries are expanded in order of elapsed time plus that bound, so the search heads towards
+ * the destination and stops as soon as no open itinerary can still enter the best K.
+ * Legs are chained with the same rules as {@link ConnectionFinder}.
+ */
+public class GoalDirectedRouter {
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final LayoverPolicy layoverPolicy = LayoverPolicy.getInstance();
+    private final RouteStore table;
+    private final int[] duration;
+    private final int[] dayMask;
+    private final int[] fromCity;
+    private final int[] toCity;
+    private final DepartureBoard[] boards;
+    private final int[][] minutesToTarget;
+
+    public GoalDirectedRouter(List<Record> allRoutes) {
+        this(RouteTable.of(allRoutes));
+    }
+
+    public GoalDirectedRouter(RouteStore table) {
+        this(table, DepartureBoard.byDepartureCity(table), null);
+    }
+
+    /**
+     * @param minutesToTarget lower bounds still valid for this table, or null to compute them
+     */
+    private GoalDirectedRouter(RouteStore table, DepartureBoard[] boards, int[][] minutesToTarget) {
+        this.table = table;
+        int n = table.size();
+        this.duration = new int[n];
+        this.dayMask = new int[n];
+        this.fromCity = new int[n];
+        this.toCity = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            duration[i] = table.durationMinutes(i);
+            dayMask[i] = table.dayMask(i);
+            fromCity[i] = table.departureCity(i);
+            toCity[i] = table.arrivalCity(i);
+        }
+        this.boards = boards;
+        this.minutesToTarget = minutesToTarget != null ? minutesToTarget : computeLowerBounds();
+    }
+
+    /**
+     * A router over a patched table that keeps the departure boards of untouched cities, and the
+     * lower bounds when they still hold: legs that were removed or slowed down only leave them
+     * lower than necessary, so they are computed again only when the patch adds a city or a
+     * changed leg is fast enough to undercut a bound
+     */
+    public GoalDirectedRouter patched(RouteTable.Patch patch, RouteStore next) {
+        DepartureBoard[] nextBoards = DepartureBoard.patchedByDepartureCity(boards, next, patch.touchedCities());
+        return new GoalDirectedRouter(next, nextBoards, boundsHold(patch, next) ? minutesToTarget : null);
+    }
+
+    /**
+     * Whether every changed leg u -> v keeps bound(u) <= transfer + leg + bound(v) for every
+     * target; the bounds of the old network then stay below the true remaining times
+     */
+    private boolean boundsHold(RouteTable.Patch patch, RouteStore next) {
+        if (next.cityCount() != table.cityCount()) return false;
+        int transfer = layoverPolicy.minTransferMinutes();
+        BitSet changed = patch.changedRows();
+        for (int row = changed.nextSetBit(0); row >= 0 && row < next.size(); row = changed.nextSetBit(row + 1)) {
+            int from = next.departureCity(row);
+            int to = next.arrivalCity(row);
+            long leg = (long) transfer + next.durationMinutes(row);
+            for (int[] bound : minutesToTarget) {
+                if (bound[to] != UNREACHABLE && bound[from] > leg + bound[to]) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the k fastest itineraries from origin to destination with at most maxConnections legs,
+     * fastest first; ties are broken by 2nd class fare like {@link ItineraryRanking#DURATION}
+     */
+    public List<List<Connection>> findFastestConnections(String origin,
+                                                         String destination,
+                                                         int minTransferMinutes,
+                                                         int maxConnections,
+                                                         String trainType,
+                                                         String day,
+                                                         Double maxFirstClassPrice,
+                                                         Double maxSecondClassPrice,
+                                                         String minDepartureTime,
+                                                         String maxDepartureTime,
+                                                         Integer maxDuration,
+                                                         int k) {
+        TopItineraries top = new TopItineraries(k, ItineraryRanking.DURATION);
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+        if (originId == RouteStore.UNKNOWN || targetId == RouteStore.UNKNOWN || originId == targetId) {
+            return top.toList();
+        }
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        LegFilter.Rows rows = filter.on(table);
+        LocalTime minDep = ConnectionFinder.parseTime(minDepartureTime);
+        LocalTime maxDep = ConnectionFinder.parseTime(maxDepartureTime);
+        int earliest = minDep == null ? 0 : TimeUtils.minuteOfDay(minDep);
+        int latest = maxDep == null ? DepartureBoard.MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDep);
+        int minTransfer = Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+        int[] bound = minutesToTarget[targetId];
+
+        PriorityQueue<Label> open = new PriorityQueue<>(Comparator
+                .comparingLong((Label l) -> l.estimate)
+                .thenComparingLong(l -> l.sequence));
+        long sequence = 0;
+
+        DepartureBoard originBoard = boards[originId];
+        int start = originBoard.nextDeparture(earliest);
+        int count = originBoard.countBetween(earliest, latest);
+        for (int i = 0; i < count; i++) {
+            int route = originBoard.position((start + i) % originBoard.size());
+            if (toCity[route] == originId || bound[toCity[route]] == UNREACHABLE) continue;
+            if (!rows.matches(route)) continue;
+            open.add(new Label(null, route, duration[route], bound[toCity[route]], sequence++,
+                    dayMask[route], table.arrivalOffset(route)));
+        }
+
+        // Estimates never exceed the true duration, so once the cheapest open estimate cannot
+        // enter the best K, no itinerary still in the queue can either
+        while (!open.isEmpty() && top.canImprove(open.peek().estimate)) {
+            Label label = open.poll();
+            int city = toCity[label.route];
+
+            if (city == targetId) {
+                DayOfWeek searchDay = filter.searchDay();
+                if (searchDay == null || (label.days & DayMask.bit(searchDay)) != 0) {
+                    top.offer(label.toConnections(table));
+                }
+                continue;
+            }
+            if (label.legs >= maxConnections) continue;
+
+            DepartureBoard board = boards[city];
+            if (board.size() == 0) continue;
+            int arrival = table.arrivalMinute(label.route);
+            int from = arrival + minTransfer;
+            int to = arrival + layoverPolicy.maxTransferMinutes();
+            int first = board.nextDeparture(from);
+            int n = board.countBetween(from, to);
+
+            for (int i = 0; i < n; i++) {
+                int idx = (first + i) % board.size();
+                int route = board.position(idx);
+                int next = toCity[route];
+                if (bound[next] == UNREACHABLE || label.visits(next, fromCity)) continue;
+
+                if (!rows.matches(route)) continue;
+                if (!layoverPolicy.isTransferAllowed(arrival, board.minute(idx))) continue;
+
+                int wait = TimeUtils.waitMinutes(arrival, board.minute(idx));
+                int departure = label.clock + wait;
+                // Keep the start days on which this leg runs on the day it is reached
+                int days = label.days & DayMask.rotate(dayMask[route], -TimeUtils.dayOf(departure));
+                if (days == 0) continue;
+
+                int elapsed = label.elapsed + wait + duration[route];
+                open.add(new Label(label, route, elapsed, bound[next], sequence++,
+                        days, departure + duration[route]));
+            }
+        }
+        return top.toList();
+    }
+
+    /**
+     * Lower bound on the minutes from arriving at each city to arriving at each target:
+     * one reverse Dijkstra per target over the shortest leg between every pair of cities,
+     * each leg preceded by the minimum transfer
+     */
+    private int[][] computeLowerBounds() {
+        int cities = table.cityCount();
+        // Shortest leg into each city from each of its neighbours
+        List<Map<Integer, Integer>> incoming = new ArrayList<>();
+        for (int c = 0; c < cities; c++) incoming.add(new HashMap<>());
+        for (int i = 0; i < table.size(); i++) {
+            incoming.get(toCity[i]).merge(fromCity[i], duration[i], Math::min);
+        }
+
+        int transfer = layoverPolicy.minTransferMinutes();
+        int[][] bounds = new int[cities][];
+        for (int target = 0; target < cities; target++) {
+            int[] dist = new int[cities];
+            Arrays.fill(dist, UNREACHABLE);
+            dist[target] = 0;
+            PriorityQueue<long[]> queue = new PriorityQueue<>(Comparator.comparingLong((long[] e) -> e[0]));
+            queue.add(new long[]{0, target});
+
+            while (!queue.isEmpty()) {
+                long[] entry = queue.poll();
+                int city = (int) entry[1];
+                if (entry[0] > dist[city]) continue;
+                for (Map.Entry<Integer, Integer> edge : incoming.get(city).entrySet()) {
+                    int candidate = dist[city] + transfer + edge.getValue();
+                    if (candidate < dist[edge.getKey()]) {
+                        dist[edge.getKey()] = candidate;
+                        queue.add(new long[]{candidate, edge.getKey()});
+                    }
+                }
+            }
+            bounds[target] = dist;
+        }
+        return bounds;
+    }
+
+    /**
+     * Partial itinerary ending with one leg; elapsed counts from the first departure,
+     * days are the days it can start on and clock is its arrival counted from the midnight of the start day
+     */
+    private static final class Label {
+        final Label parent;
+        final int route;
+        final int elapsed;
+        final int legs;
+        final long estimate;
+        final long sequence;
+        final int days;
+        final int clock;
+
+        Label(Label parent, int route, int elapsed, int remaining, long sequence, int days, int clock) {
+            this.parent = parent;
+            this.route = route;
+            this.elapsed = elapsed;
+            this.legs = parent == null ? 1 : parent.legs + 1;
+            this.estimate = (long) elapsed + remaining;
+            this.sequence = sequence;
+            this.days = days;
+            this.clock = clock;
+        }
+
+        boolean visits(int city, int[] fromCity) {
+            for (Label l = this; l != null; l = l.parent) {
+                if (fromCity[l.route] == city) return true;
+            }
+            return false;
+        }
+
+        List<Connection> toConnections(RouteStore table) {
+            List<Connection> path = new ArrayList<>();
+            for (Label l = this; l != null; l = l.parent) path.add(0, new Connection(table.record(l.route)));
+            return path;
+        }
+    }
+}
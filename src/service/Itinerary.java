@@ -0,0 +1,54 @@
+package service;
+
+import model.Connection;
+import model.DayMask;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * Itinerary found by {@link ConnectionFinder}: the route rows of its legs plus totals computed
+ * once during the search. It is exposed as an unmodifiable list of connections without copying;
+ * the {@link Connection} of each row is only created, and then shared, when a leg is first read.
+ */
+final class Itinerary extends AbstractList<Connection> implements RandomAccess {
+    private final int[] legs;
+    private final IntFunction<Connection> connections;
+    final long minutes;
+    final long firstClassCents;
+    final long secondClassCents;
+    final int dayMask;
+
+    Itinerary(int[] legs, IntFunction<Connection> connections,
+              long minutes, long firstClassCents, long secondClassCents, int dayMask) {
+        this.legs = legs;
+        this.connections = connections;
+        this.minutes = minutes;
+        this.firstClassCents = firstClassCents;
+        this.secondClassCents = secondClassCents;
+        this.dayMask = dayMask;
+    }
+
+    @Override
+    public Connection get(int index) {
+        return connections.apply(legs[index]);
+    }
+
+    @Override
+    public int size() {
+        return legs.length;
+    }
+
+    double firstClassTotal() {
+        return firstClassCents / 100.0;
+    }
+
+    double secondClassTotal() {
+        return secondClassCents / 100.0;
+    }
+
+    DayMask validDays() {
+        return DayMask.of(dayMask);
+    }
+}
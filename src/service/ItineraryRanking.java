@@ -0,0 +1,55 @@
+package service;
+
+import model.Connection;
+
+import java.util.List;
+
+/**
+ * Orderings offered for multi-leg itineraries, all ascending.
+ * Each ordering has a primary key and a tie-breaker, matching {@link ConnectionSorter}.
+ */
+public enum ItineraryRanking {
+    DURATION,
+    FIRST_CLASS_PRICE,
+    SECOND_CLASS_PRICE;
+
+    /**
+     * Maps the sort menu choice used in Main ("1", "2", "3") to a ranking, or null for no sorting
+     */
+    public static ItineraryRanking fromChoice(String choice) {
+        return switch (choice) {
+            case "1" -> DURATION;
+            case "2" -> FIRST_CLASS_PRICE;
+            case "3" -> SECOND_CLASS_PRICE;
+            default -> null;
+        };
+    }
+
+    public double primaryKey(long totalMinutes, double firstClassTotal, double secondClassTotal) {
+        return switch (this) {
+            case DURATION -> totalMinutes;
+            case FIRST_CLASS_PRICE -> firstClassTotal;
+            case SECOND_CLASS_PRICE -> secondClassTotal;
+        };
+    }
+
+    public double secondaryKey(long totalMinutes, double firstClassTotal, double secondClassTotal) {
+        return switch (this) {
+            case DURATION -> secondClassTotal;
+            case FIRST_CLASS_PRICE, SECOND_CLASS_PRICE -> totalMinutes;
+        };
+    }
+
+    /**
+     * Computes both keys of a complete itinerary in a single pass
+     */
+    public double[] keys(List<Connection> path) {
+        long minutes = ConnectionFinder.calculateTotalDuration(path);
+        double first = ConnectionFinder.calculateFirstClassTotal(path);
+        double second = ConnectionFinder.calculateSecondClassTotal(path);
+        return new double[] {
+                primaryKey(minutes, first, second),
+                secondaryKey(minutes, first, second)
+        };
+    }
+}
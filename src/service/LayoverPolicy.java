@@ -1,6 +1,7 @@
 package service;
 
 import model.Connection;
+import model.TimeUtils;
 
 import java.time.LocalTime;
 import java.util.List;
@@ -8,6 +9,8 @@ import java.util.List;
 public final class LayoverPolicy {
     private final LocalTime DAY_START = LocalTime.of(6, 0);
     private final LocalTime DAY_END   = LocalTime.of(22, 0);
+    private final int DAY_START_MINUTE = TimeUtils.minuteOfDay(DAY_START);
+    private final int DAY_END_MINUTE = TimeUtils.minuteOfDay(DAY_END);
     private final int MAX_DAY_MINUTES = 120;
     private final int MAX_NIGHT_MINUTES = 30;
     private final int MIN_TRANSFER_MINUTES = 5;
@@ -26,16 +29,36 @@ public final class LayoverPolicy {
     }
     private LayoverPolicy() {}
 
+    /**
+     * Shortest transfer the policy ever accepts
+     */
+    public int minTransferMinutes() {
+        return MIN_TRANSFER_MINUTES;
+    }
+
+    /**
+     * Longest transfer the policy ever accepts (daytime limit)
+     */
+    public int maxTransferMinutes() {
+        return MAX_DAY_MINUTES;
+    }
 
 
     public boolean isTransferAllowed(LocalTime arrival, LocalTime departure) {
-        int minutes = minutesBetweenWrapped(arrival, departure);
+        return isTransferAllowed(TimeUtils.minuteOfDay(arrival), TimeUtils.minuteOfDay(departure));
+    }
+
+    /**
+     * Same check on minutes of the day
+     */
+    public boolean isTransferAllowed(int arrivalMinute, int departureMinute) {
+        int minutes = TimeUtils.waitMinutes(arrivalMinute, departureMinute);
         if (minutes < MIN_TRANSFER_MINUTES) {
             return false;
         }
 
-        boolean arrivalAfterHours = isAfterHours(arrival);
-        boolean departureAfterHours = isAfterHours(departure);
+        boolean arrivalAfterHours = isAfterHours(arrivalMinute);
+        boolean departureAfterHours = isAfterHours(departureMinute);
 
         int limit;
         if (arrivalAfterHours || departureAfterHours) {
@@ -60,17 +83,7 @@ public final class LayoverPolicy {
         return true;
     }
 
-    private boolean isAfterHours(LocalTime t) {
-        return t.isBefore(DAY_START) || !t.isBefore(DAY_END);
-    }
-
-    private int minutesBetweenWrapped(LocalTime a, LocalTime b) {
-        int aMin = a.toSecondOfDay() / 60;
-        int bMin = b.toSecondOfDay() / 60;
-        int diff = bMin - aMin;
-        if (diff < 0) {
-            diff += 24 * 60;
-        }
-        return diff;
+    private boolean isAfterHours(int minute) {
+        return minute < DAY_START_MINUTE || minute >= DAY_END_MINUTE;
     }
 }
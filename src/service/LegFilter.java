@@ -0,0 +1,142 @@
+package service;
+
+import model.DayMask;
+import model.NameDictionary;
+import model.Record;
+import model.RouteStore;
+
+import java.time.DayOfWeek;
+
+/**
+ * Filters applied to every individual leg of a multi-leg search.
+ * Shared by the routing engines so that they all answer the same question.
+ */
+public final class LegFilter {
+    private static final LegFilter NONE = new LegFilter(null, null, null, null, null);
+
+    private final String trainType;
+    private final DayOfWeek searchDay;
+    private final Double maxFirstClassPrice;
+    private final Double maxSecondClassPrice;
+    private final Integer maxDuration;
+
+    public LegFilter(String trainType, DayOfWeek searchDay, Double maxFirstClassPrice,
+                     Double maxSecondClassPrice, Integer maxDuration) {
+        this.trainType = trainType;
+        this.searchDay = searchDay;
+        this.maxFirstClassPrice = maxFirstClassPrice;
+        this.maxSecondClassPrice = maxSecondClassPrice;
+        this.maxDuration = maxDuration;
+    }
+
+    public static LegFilter none() {
+        return NONE;
+    }
+
+    public static LegFilter of(String trainType, String day, Double maxFirstClassPrice,
+                               Double maxSecondClassPrice, Integer maxDuration) {
+        return new LegFilter(trainType, parseDay(day), maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+    }
+
+    public DayOfWeek searchDay() {
+        return searchDay;
+    }
+
+    /**
+     * Checks if a route matches the given filters.
+     * Departure time windows are applied by the departure board slice, not here.
+     */
+    public boolean matches(Record route) {
+
+        // Train type filter
+        if (trainType != null && !trainType.isEmpty() &&
+                !NameDictionary.key(route.getTrainType()).equals(NameDictionary.key(trainType))) {
+            return false;
+        }
+
+        // Day of operation filter
+        if (searchDay != null && !route.getDaysOfOperation().contains(searchDay)) {
+            return false;
+        }
+
+        // First class price filter
+        if (maxFirstClassPrice != null && route.getFirstClassRate() > maxFirstClassPrice) {
+            return false;
+        }
+
+        // Second class price filter
+        if (maxSecondClassPrice != null && route.getSecondClassRate() > maxSecondClassPrice) {
+            return false;
+        }
+
+        // Duration filter (applies to each individual leg)
+        if (maxDuration != null) {
+            if (route.getDurationMinutes() > maxDuration) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Resolves the filter against a route table, so that rows are checked on its primitive columns
+     */
+    public Rows on(RouteStore table) {
+        return new Rows(table);
+    }
+
+    /**
+     * The same filter applied to rows of a {@link RouteStore}
+     */
+    public final class Rows {
+        private final RouteStore table;
+        private final boolean anyTrainType;
+        private final int trainTypeId;
+        private final int dayBit;
+        private final long maxFirstClassCents;
+        private final long maxSecondClassCents;
+        private final int maxMinutes;
+
+        private Rows(RouteStore table) {
+            this.table = table;
+            this.anyTrainType = trainType == null || trainType.isEmpty();
+            this.trainTypeId = anyTrainType ? RouteStore.UNKNOWN : table.trainTypeId(trainType);
+            this.dayBit = searchDay == null ? 0 : DayMask.bit(searchDay);
+            this.maxFirstClassCents = maxFirstClassPrice == null ? Long.MAX_VALUE : RouteStore.centsFloor(maxFirstClassPrice);
+            this.maxSecondClassCents = maxSecondClassPrice == null ? Long.MAX_VALUE : RouteStore.centsFloor(maxSecondClassPrice);
+            this.maxMinutes = maxDuration == null ? Integer.MAX_VALUE : maxDuration;
+        }
+
+        public LegFilter filter() {
+            return LegFilter.this;
+        }
+
+        public boolean matches(int row) {
+            // An unknown train type matches no row
+            return (anyTrainType || table.trainType(row) == trainTypeId)
+                    && (dayBit == 0 || (table.dayMask(row) & dayBit) != 0)
+                    && table.firstClassCents(row) <= maxFirstClassCents
+                    && table.secondClassCents(row) <= maxSecondClassCents
+                    && table.durationMinutes(row) <= maxMinutes;
+        }
+    }
+
+    static DayOfWeek parseDay(String day) {
+        if (day == null || day.isEmpty() || day.equalsIgnoreCase("Daily")) {
+            return null;
+        }
+
+        String normalized = day.trim().toLowerCase();
+        return switch (normalized) {
+            case "monday", "mon" -> DayOfWeek.MONDAY;
+            case "tuesday", "tue" -> DayOfWeek.TUESDAY;
+            case "wednesday", "wed" -> DayOfWeek.WEDNESDAY;
+            case "thursday", "thu" -> DayOfWeek.THURSDAY;
+            case "friday", "fri" -> DayOfWeek.FRIDAY;
+            case "saturday", "sat" -> DayOfWeek.SATURDAY;
+            case "sunday", "sun" -> DayOfWeek.SUNDAY;
+            default -> null;
+        };
+    }
+}
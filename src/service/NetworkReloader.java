@@ -0,0 +1,104 @@
+package service;
+
+import model.RouteTable;
+import repositories.RouteRepository;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the loaded route network in step with the routes table while the application runs.
+ * Triggers log the id of every route inserted, updated or deleted in route_changes; a reload
+ * reads the log past the last change applied, fetches only those routes, patches the current
+ * network and publishes the result, route index included, with one atomic swap. Searches take
+ * {@link #current()} once and keep using that network, so a reload never changes the data under
+ * a running search. When the log shows the table was replaced, or entries this reloader has not
+ * applied were pruned, the network is loaded again in full instead.
+ * Polls every -Droutes.reloadMillis milliseconds (default 5000; 0 turns polling off).
+ */
+public class NetworkReloader implements AutoCloseable {
+    // Entries kept in route_changes behind the newest one applied, for other processes that lag behind
+    private static final long RETAINED_CHANGES = 10_000;
+
+    private final RouteRepository routeRepo;
+    private final AtomicReference<RouteNetwork> network;
+    private long lastChangeId;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param lastChangeId change log position read before the network was loaded; changes logged
+     *                     while it loaded are applied again, which leaves the same routes.
+     *                     Route lookups of the repository should be served from {@link #current()}.
+     */
+    public NetworkReloader(RouteRepository routeRepo, RouteNetwork network, long lastChangeId) {
+        this.routeRepo = routeRepo;
+        this.network = new AtomicReference<>(network);
+        this.lastChangeId = lastChangeId;
+    }
+
+    public RouteNetwork current() {
+        return network.get();
+    }
+
+    /**
+     * Applies the route changes logged since the last reload and returns how many routes changed.
+     * Nothing is published when the log cannot be read; the next reload tries again.
+     */
+    public synchronized int reload() {
+        long latest = routeRepo.getLatestChangeId();
+        if (latest < 0 || latest == lastChangeId) return 0;
+        long oldest = routeRepo.getOldestChangeId();
+        if (oldest < 0) return 0;
+
+        // Pruning removes the oldest entries, so every change after lastChangeId is still in the log
+        // only when the oldest entry comes right after it; otherwise some may have been missed
+        boolean missedChanges = lastChangeId < 0 || oldest == 0 || oldest > lastChangeId + 1 || latest < lastChangeId;
+        RouteRepository.RouteChanges changes = missedChanges ? null : routeRepo.findChanges(lastChangeId, latest);
+        if (!missedChanges && changes == null) return 0;
+
+        int changed;
+        if (missedChanges || changes.allRoutes()) {
+            RouteTable table = RouteTable.of(routeRepo.getRoutes());
+            network.set(network.get().rebuild(table));
+            changed = table.size();
+        } else {
+            network.set(network.get().patch(changes.changed(), changes.removed()));
+            changed = changes.size();
+        }
+        lastChangeId = latest;
+        routeRepo.pruneChanges(latest - RETAINED_CHANGES);
+        return changed;
+    }
+
+    /**
+     * Starts polling the change log in the background, unless polling is turned off
+     */
+    public synchronized void start() {
+        long intervalMillis = Long.getLong("routes.reloadMillis", 5_000L);
+        if (intervalMillis <= 0 || scheduler != null) return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "network-reloader");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                // Keep polling; a failed patch leaves the published network as it was
+                System.err.println("Error reloading routes: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
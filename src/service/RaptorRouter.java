@@ -0,0 +1,283 @@
+package service;
+
+import model.Connection;
+import model.DayMask;
+import model.Record;
+import model.RouteStore;
+import model.RouteTable;
+import model.TimeUtils;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Round-based (RAPTOR-style) multi-criteria router.
+ * Round k extends the journeys found in round k-1 by one leg. Every label carries its
+ * departure and arrival time, number of legs and both fares, and each city keeps one bag of
+ * labels. A label is dropped as soon as another one in the bag left no earlier, arrives no
+ * later, is at least as good on every other criterion and can still take every onward
+ * departure it could (layovers are bounded, so arriving earlier is not always better).
+ * Only the non-dominated journeys (duration, legs, 1st class fare, 2nd class fare) that reach
+ * the destination are returned.
+ */
+public class RaptorRouter {
+    public static final int MAX_LEGS = 8;
+    private static final int MINUTES_PER_DAY = DepartureBoard.MINUTES_PER_DAY;
+
+    private final LayoverPolicy layoverPolicy = LayoverPolicy.getInstance();
+    private final RouteStore table;
+    private final int[] duration;
+    private final int[] dayMask;
+    private final int[] fromCity;
+    private final int[] toCity;
+    private final DepartureBoard[] boards;
+
+    public RaptorRouter(List<Record> allRoutes) {
+        this(RouteTable.of(allRoutes));
+    }
+
+    public RaptorRouter(RouteStore table) {
+        this(table, DepartureBoard.byDepartureCity(table));
+    }
+
+    private RaptorRouter(RouteStore table, DepartureBoard[] boards) {
+        this.table = table;
+        int n = table.size();
+        this.duration = new int[n];
+        this.dayMask = new int[n];
+        this.fromCity = new int[n];
+        this.toCity = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            duration[i] = table.durationMinutes(i);
+            dayMask[i] = table.dayMask(i);
+            fromCity[i] = table.departureCity(i);
+            toCity[i] = table.arrivalCity(i);
+        }
+        this.boards = boards;
+    }
+
+    /**
+     * A router over a patched table that keeps the departure boards of untouched cities
+     */
+    public RaptorRouter patched(RouteTable.Patch patch, RouteStore next) {
+        return new RaptorRouter(next, DepartureBoard.patchedByDepartureCity(boards, next, patch.touchedCities()));
+    }
+
+    public List<List<Connection>> findParetoConnections(String origin, String destination,
+                                                        int minTransferMinutes, int maxLegs) {
+        return findParetoConnections(origin, destination, minTransferMinutes, maxLegs,
+                null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Returns the Pareto front of journeys from origin to destination with at most maxLegs legs,
+     * ordered by total duration
+     */
+    public List<List<Connection>> findParetoConnections(String origin,
+                                                        String destination,
+                                                        int minTransferMinutes,
+                                                        int maxLegs,
+                                                        String trainType,
+                                                        String day,
+                                                        Double maxFirstClassPrice,
+                                                        Double maxSecondClassPrice,
+                                                        String minDepartureTime,
+                                                        String maxDepartureTime,
+                                                        Integer maxDuration) {
+        int originId = table.cityId(origin);
+        int targetId = table.cityId(destination);
+        if (originId == RouteStore.UNKNOWN || targetId == RouteStore.UNKNOWN || originId == targetId) {
+            return new ArrayList<>();
+        }
+
+        LegFilter filter = LegFilter.of(trainType, day, maxFirstClassPrice, maxSecondClassPrice, maxDuration);
+        LegFilter.Rows rows = filter.on(table);
+        int startMask = filter.searchDay() == null ? DayMask.ALL_BITS : DayMask.bit(filter.searchDay());
+        LocalTime minDep = ConnectionFinder.parseTime(minDepartureTime);
+        LocalTime maxDep = ConnectionFinder.parseTime(maxDepartureTime);
+        int earliest = minDep == null ? 0 : TimeUtils.minuteOfDay(minDep);
+        int latest = maxDep == null ? MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDep);
+        int minTransfer = Math.max(minTransferMinutes, layoverPolicy.minTransferMinutes());
+        int rounds = Math.min(maxLegs, MAX_LEGS);
+
+        // Bags of labels per city and the Pareto front at the destination
+        Map<Integer, List<Label>> bags = new HashMap<>();
+        BiPredicate<Label, Label> dominates = (a, b) -> dominates(a, b, minTransfer);
+        List<Label> front = new ArrayList<>();
+        List<Label> marked = new ArrayList<>();
+
+        // Round 1: legs leaving the origin inside the departure window
+        DepartureBoard originBoard = boards[originId];
+        int start = originBoard.nextDeparture(earliest);
+        int count = originBoard.countBetween(earliest, latest);
+        for (int k = 0; k < count; k++) {
+            int route = originBoard.position((start + k) % originBoard.size());
+            if (!rows.matches(route)) continue;
+            int mask = dayMask[route] & startMask;
+            if (mask == 0) continue;
+            int dep = originBoard.minute((start + k) % originBoard.size());
+            Label label = new Label(null, route, table, dep, dep + duration[route], mask);
+            offer(label, targetId, bags, front, marked, dominates);
+        }
+
+        // Round k: extend every label improved in the previous round by one more leg
+        for (int round = 2; round <= rounds && !marked.isEmpty(); round++) {
+            List<Label> previous = marked;
+            marked = new ArrayList<>();
+
+            for (Label label : previous) {
+                if (label.dominated) continue;
+                int city = toCity[label.route];
+                DepartureBoard board = boards[city];
+                if (board.size() == 0) continue;
+
+                int arrivalMinute = label.arrival % MINUTES_PER_DAY;
+                int from = arrivalMinute + minTransfer;
+                int to = arrivalMinute + layoverPolicy.maxTransferMinutes();
+                int first = board.nextDeparture(from);
+                int n = board.countBetween(from, to);
+
+                for (int k = 0; k < n; k++) {
+                    int idx = (first + k) % board.size();
+                    int route = board.position(idx);
+                    if (!rows.matches(route)) continue;
+                    if (label.visits(toCity[route], fromCity)) continue;
+                    if (!layoverPolicy.isTransferAllowed(arrivalMinute, board.minute(idx))) continue;
+
+                    int wait = TimeUtils.waitMinutes(arrivalMinute, board.minute(idx));
+                    int dep = label.arrival + wait;
+                    int mask = label.mask & DayMask.rotate(dayMask[route], -(dep / MINUTES_PER_DAY));
+                    if (mask == 0) continue;
+
+                    offer(new Label(label, route, table, dep, dep + duration[route], mask),
+                            targetId, bags, front, marked, dominates);
+                }
+            }
+        }
+
+        front.sort(Comparator.comparingInt(Label::duration)
+                .thenComparingLong(l -> l.secondClassCents));
+        List<List<Connection>> result = new ArrayList<>();
+        for (Label label : front) result.add(label.toConnections(table));
+        return result;
+    }
+
+    /**
+     * Inserts a label into its bag unless an existing label dominates it
+     */
+    private void offer(Label label, int targetId, Map<Integer, List<Label>> bags,
+                       List<Label> front, List<Label> marked, BiPredicate<Label, Label> dominates) {
+        if (toCity[label.route] == targetId) {
+            insertIfNotDominated(label, front, Label::dominatesAtDestination);
+            return;
+        }
+        List<Label> bag = bags.computeIfAbsent(toCity[label.route], k -> new ArrayList<>());
+        if (insertIfNotDominated(label, bag, dominates)) {
+            marked.add(label);
+        }
+    }
+
+    private static boolean insertIfNotDominated(Label label, List<Label> bag, BiPredicate<Label, Label> dominates) {
+        for (Label other : bag) {
+            if (dominates.test(other, label)) return false;
+        }
+        bag.removeIf(other -> {
+            if (dominates.test(label, other)) {
+                other.dominated = true;
+                return true;
+            }
+            return false;
+        });
+        bag.add(label);
+        return true;
+    }
+
+    /**
+     * Whether label a, waiting at the same city as b, makes b useless: it left no earlier, arrives
+     * no later, has no more legs, costs no more, runs on every day b runs on, and every onward
+     * departure b could transfer to is also inside a's transfer window
+     */
+    private boolean dominates(Label a, Label b, int minTransfer) {
+        if (a.departure < b.departure || a.arrival > b.arrival || a.legs > b.legs
+                || a.firstClassCents > b.firstClassCents || a.secondClassCents > b.secondClassCents
+                || (a.mask | b.mask) != a.mask) {
+            return false;
+        }
+        if (a.arrival == b.arrival) return true;
+
+        DepartureBoard board = boards[toCity[b.route]];
+        int arrivalA = a.arrival % MINUTES_PER_DAY;
+        int arrivalB = b.arrival % MINUTES_PER_DAY;
+        int from = arrivalB + minTransfer;
+        int first = board.nextDeparture(from);
+        int n = board.countBetween(from, arrivalB + layoverPolicy.maxTransferMinutes());
+        for (int k = 0; k < n; k++) {
+            int departure = board.minute((first + k) % board.size());
+            if (!layoverPolicy.isTransferAllowed(arrivalB, departure)) continue;
+            int waitA = b.arrival + TimeUtils.waitMinutes(arrivalB, departure) - a.arrival;
+            if (waitA > layoverPolicy.maxTransferMinutes() || !layoverPolicy.isTransferAllowed(arrivalA, departure)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Partial journey ending with one leg; times are minutes from midnight of the departure day
+     */
+    private static final class Label {
+        final Label parent;
+        final int route;
+        final int departure;
+        final int arrival;
+        final int legs;
+        final long firstClassCents;
+        final long secondClassCents;
+        final int mask;
+        boolean dominated;
+
+        Label(Label parent, int route, RouteStore table, int departure, int arrival, int mask) {
+            this.parent = parent;
+            this.route = route;
+            this.departure = parent == null ? departure : parent.departure;
+            this.arrival = arrival;
+            this.legs = parent == null ? 1 : parent.legs + 1;
+            this.mask = mask;
+            this.firstClassCents = (parent == null ? 0 : parent.firstClassCents) + table.firstClassCents(route);
+            this.secondClassCents = (parent == null ? 0 : parent.secondClassCents) + table.secondClassCents(route);
+        }
+
+        int duration() {
+            return arrival - departure;
+        }
+
+        /**
+         * Dominance among complete journeys, which are compared on the returned criteria only
+         */
+        boolean dominatesAtDestination(Label o) {
+            return duration() <= o.duration()
+                    && legs <= o.legs
+                    && firstClassCents <= o.firstClassCents
+                    && secondClassCents <= o.secondClassCents;
+        }
+
+        boolean visits(int city, int[] fromCity) {
+            for (Label l = this; l != null; l = l.parent) {
+                if (fromCity[l.route] == city) return true;
+            }
+            return false;
+        }
+
+        List<Connection> toConnections(RouteStore table) {
+            List<Connection> path = new ArrayList<>();
+            for (Label l = this; l != null; l = l.parent) path.add(0, new Connection(table.record(l.route)));
+            return path;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package service;
+
+import model.OffHeapRouteStore;
+import model.Record;
+import model.RouteStore;
+import model.RouteTable;
+import repositories.RouteIndex;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One version of the loaded route network with every search engine built over it, and the
+ * index that bookings resolve route ids against.
+ * Nothing in it changes after construction: a reload builds a new network and publishes it
+ * whole (see {@link NetworkReloader}), so a search started on this one finishes on it.
+ */
+public record RouteNetwork(RouteStore store,
+                           RouteIndex routeIndex,
+                           AdvancedSearch directSearch,
+                           ConnectionScanRouter connectionScan,
+                           RaptorRouter raptor,
+                           ConnectionFinder connectionFinder,
+                           GoalDirectedRouter goalDirected) {
+
+    public static RouteNetwork of(RouteStore store) {
+        return new RouteNetwork(store,
+                new RouteIndex(store),
+                new AdvancedSearch(new SearchIndex(store)),
+                new ConnectionScanRouter(store),
+                new RaptorRouter(store),
+                new ConnectionFinder(store),
+                new GoalDirectedRouter(store));
+    }
+
+    /**
+     * A network built from scratch over another store, with a two-hop index if this one has one.
+     * A heap table replacing an off-heap store is copied into a direct buffer first.
+     */
+    public RouteNetwork rebuild(RouteStore next) {
+        if (store instanceof OffHeapRouteStore && next instanceof RouteTable table) {
+            next = OffHeapRouteStore.of(table);
+        }
+        RouteNetwork network = of(next);
+        if (connectionFinder.hasTwoHopIndex()) network.connectionFinder().enableTwoHopIndex();
+        return network;
+    }
+
+    /**
+     * This network with routes added, updated or removed. The new table copies the unchanged
+     * rows, and every engine is patched rather than rebuilt: boards, posting lists and index
+     * entries of untouched cities and rows are shared or copied, the scan order of the connection
+     * scan is merged, and the A* bounds are kept unless a changed leg could undercut them.
+     * A network served off-heap stays off-heap: the patched rows are copied into a new direct
+     * buffer and the heap table is dropped once it is written.
+     */
+    public RouteNetwork patch(List<Record> changed, Collection<String> removed) {
+        RouteTable.Patch patch = RouteTable.patch(store, changed, removed);
+        RouteStore table = store instanceof OffHeapRouteStore ? OffHeapRouteStore.of(patch.table()) : patch.table();
+        return new RouteNetwork(table,
+                routeIndex.patched(table, patch.changedRows()),
+                new AdvancedSearch(directSearch.index().patched(patch, table)),
+                connectionScan.patched(patch, table),
+                raptor.patched(patch, table),
+                connectionFinder.patched(patch, table),
+                goalDirected.patched(patch, table));
+    }
+}
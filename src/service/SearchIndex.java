@@ -0,0 +1,256 @@
+package service;
+
+import model.NameDictionary;
+import model.Record;
+import model.RouteStore;
+import model.RouteTable;
+import model.TimeUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Immutable lookup index over the loaded network.
+ * Routes are referred to by their row in the {@link RouteStore}; every city, train type and
+ * day maps to an ascending posting list of rows so that queries can intersect them.
+ */
+public final class SearchIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final RouteStore table;
+    private final int[][] byDepartureCity;
+    private final int[][] byArrivalCity;
+    private final int[][] byTrainType;
+    private final int[][] byDay;
+    private final DepartureBoard[] boardsByDepartureCity;
+    private final DepartureBoard allDepartures;
+
+    public SearchIndex(List<Record> records) {
+        this(RouteTable.of(records));
+    }
+
+    public SearchIndex(RouteStore table) {
+        this.table = table;
+        int n = table.size();
+
+        List<List<Integer>> departures = lists(table.cityCount());
+        List<List<Integer>> arrivals = lists(table.cityCount());
+        List<List<Integer>> trainTypes = lists(table.trainTypeCount());
+        List<List<Integer>> days = lists(7);
+
+        for (int i = 0; i < n; i++) {
+            departures.get(table.departureCity(i)).add(i);
+            arrivals.get(table.arrivalCity(i)).add(i);
+            trainTypes.get(table.trainType(i)).add(i);
+            int mask = table.dayMask(i);
+            for (int d = 0; d < 7; d++) {
+                if ((mask & (1 << d)) != 0) days.get(d).add(i);
+            }
+        }
+
+        List<Integer> all = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) all.add(i);
+        this.allDepartures = new DepartureBoard(all, table::departureMinute);
+
+        this.byDepartureCity = toArrays(departures);
+        this.byArrivalCity = toArrays(arrivals);
+        this.byTrainType = toArrays(trainTypes);
+        this.byDay = toArrays(days);
+        this.boardsByDepartureCity = DepartureBoard.byDepartureCity(table);
+    }
+
+    private SearchIndex(RouteStore table, int[][] byDepartureCity, int[][] byArrivalCity, int[][] byTrainType,
+                        int[][] byDay, DepartureBoard[] boardsByDepartureCity, DepartureBoard allDepartures) {
+        this.table = table;
+        this.byDepartureCity = byDepartureCity;
+        this.byArrivalCity = byArrivalCity;
+        this.byTrainType = byTrainType;
+        this.byDay = byDay;
+        this.boardsByDepartureCity = boardsByDepartureCity;
+        this.allDepartures = allDepartures;
+    }
+
+    /**
+     * An index over a patched table. Posting lists and boards of cities and train types no
+     * changed row had or has are shared; the others, the day lists and the board of all
+     * departures drop the changed rows and merge them back in with their new values.
+     */
+    public SearchIndex patched(RouteTable.Patch patch, RouteStore next) {
+        BitSet changed = patch.changedRows();
+        // Rows past the new size were removed; their old train types lose a row too
+        BitSet dropped = (BitSet) changed.clone();
+        if (table.size() > next.size()) dropped.set(next.size(), table.size());
+        BitSet touchedTypes = new BitSet();
+        for (int row = dropped.nextSetBit(0); row >= 0; row = dropped.nextSetBit(row + 1)) {
+            if (row < table.size()) touchedTypes.set(table.trainType(row));
+            if (row < next.size()) touchedTypes.set(next.trainType(row));
+        }
+
+        int[][] departures = Arrays.copyOf(byDepartureCity, next.cityCount());
+        int[][] arrivals = Arrays.copyOf(byArrivalCity, next.cityCount());
+        for (int c = 0; c < departures.length; c++) {
+            if (departures[c] == null || patch.touchedCities().get(c)) {
+                int city = c;
+                departures[c] = patched(departures[c], dropped, next.size(), row -> next.departureCity(row) == city);
+                arrivals[c] = patched(arrivals[c], dropped, next.size(), row -> next.arrivalCity(row) == city);
+            }
+        }
+        int[][] trainTypes = Arrays.copyOf(byTrainType, next.trainTypeCount());
+        for (int t = 0; t < trainTypes.length; t++) {
+            if (trainTypes[t] == null || touchedTypes.get(t)) {
+                int type = t;
+                trainTypes[t] = patched(trainTypes[t], dropped, next.size(), row -> next.trainType(row) == type);
+            }
+        }
+        int[][] days = new int[7][];
+        for (int d = 0; d < 7; d++) {
+            int bit = 1 << d;
+            days[d] = patched(byDay[d], dropped, next.size(), row -> (next.dayMask(row) & bit) != 0);
+        }
+
+        return new SearchIndex(next, departures, arrivals, trainTypes, days,
+                DepartureBoard.patchedByDepartureCity(boardsByDepartureCity, next, patch.touchedCities()),
+                allDepartures.patched(changed, next.size(), next::departureMinute));
+    }
+
+    /**
+     * An ascending posting list without the dropped rows, merged with the dropped rows that are
+     * still in the table and now belong to it
+     */
+    private static int[] patched(int[] postings, BitSet dropped, int size, IntPredicate belongs) {
+        if (postings == null) postings = EMPTY;
+        int[] out = new int[postings.length + dropped.cardinality()];
+        int n = 0;
+        int next = dropped.nextSetBit(0);
+        for (int row : postings) {
+            for (; next >= 0 && next < row; next = dropped.nextSetBit(next + 1)) {
+                if (next < size && belongs.test(next)) out[n++] = next;
+            }
+            if (!dropped.get(row)) out[n++] = row;
+        }
+        for (; next >= 0 && next < size; next = dropped.nextSetBit(next + 1)) {
+            if (belongs.test(next)) out[n++] = next;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Normalizes a key the same way for indexing and querying
+     */
+    public static String normalize(String s) {
+        return NameDictionary.key(s);
+    }
+
+    public RouteStore table() {
+        return table;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public Record get(int position) {
+        return table.record(position);
+    }
+
+    /**
+     * Returns the ascending positions of all routes matching every given key.
+     * Blank or null keys are not constrained; with no keys at all every position is returned.
+     */
+    public int[] lookup(String departure, String arrival, String trainType, DayOfWeek day) {
+        return lookup(departure, arrival, trainType, day, null, null);
+    }
+
+    /**
+     * Same as {@link #lookup(String, String, String, DayOfWeek)}, additionally restricted to
+     * departures within [minDeparture, maxDeparture]. The window is cut out of the
+     * time-sorted departure board of the city (or of the whole network) by binary search.
+     */
+    public int[] lookup(String departure, String arrival, String trainType, DayOfWeek day,
+                        LocalTime minDeparture, LocalTime maxDeparture) {
+        List<int[]> postings = new ArrayList<>(4);
+        boolean timeWindow = minDeparture != null || maxDeparture != null;
+
+        if (timeWindow) {
+            DepartureBoard board = isBlank(departure)
+                    ? allDepartures
+                    : boardOf(table.cityId(departure));
+            if (board == null) return EMPTY;
+            int from = minDeparture == null ? 0 : TimeUtils.minuteOfDay(minDeparture);
+            int to = maxDeparture == null ? DepartureBoard.MINUTES_PER_DAY - 1 : TimeUtils.minuteOfDay(maxDeparture);
+            postings.add(board.positionsBetween(from, to));
+        } else if (!isBlank(departure)) {
+            postings.add(postings(byDepartureCity, table.cityId(departure)));
+        }
+        if (!isBlank(arrival)) postings.add(postings(byArrivalCity, table.cityId(arrival)));
+        if (!isBlank(trainType)) postings.add(postings(byTrainType, table.trainTypeId(trainType)));
+        if (day != null) postings.add(byDay[day.getValue() - 1]);
+
+        if (postings.isEmpty()) {
+            int[] all = new int[table.size()];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+
+        // Smallest list first so every later step only probes the surviving candidates
+        postings.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = postings.get(0);
+        for (int i = 1; i < postings.size() && result.length > 0; i++) {
+            result = intersect(result, postings.get(i));
+        }
+        return postings.size() == 1 && !timeWindow ? result.clone() : result;
+    }
+
+    /**
+     * Intersects a short sorted list with a longer one by binary searching the longer list
+     */
+    private static int[] intersect(int[] small, int[] large) {
+        int[] out = new int[small.length];
+        int n = 0;
+        int from = 0;
+        for (int value : small) {
+            int idx = Arrays.binarySearch(large, from, large.length, value);
+            if (idx >= 0) {
+                out[n++] = value;
+                from = idx + 1;
+            } else {
+                from = -idx - 1;
+            }
+            if (from >= large.length) break;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private DepartureBoard boardOf(int city) {
+        return city == RouteStore.UNKNOWN ? null : boardsByDepartureCity[city];
+    }
+
+    private static int[] postings(int[][] byId, int id) {
+        return id == RouteStore.UNKNOWN ? EMPTY : byId[id];
+    }
+
+    private static List<List<Integer>> lists(int n) {
+        List<List<Integer>> lists = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) lists.add(new ArrayList<>());
+        return lists;
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            List<Integer> list = lists.get(i);
+            arrays[i] = new int[list.size()];
+            for (int j = 0; j < arrays[i].length; j++) arrays[i][j] = list.get(j);
+        }
+        return arrays;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isEmpty();
+    }
+}
@@ -0,0 +1,88 @@
+package service;
+
+import model.Connection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best K itineraries seen so far under a ranking.
+ * Sort keys are computed once per itinerary when it is offered; the heap keeps the worst
+ * of the current best K at its head so that it can be evicted, and so that searches can
+ * stop extending partial itineraries that already rank below it.
+ */
+public final class TopItineraries {
+    // Ties keep discovery order, like the stable sorts in ConnectionSorter
+    private static final Comparator<Ranked> BEST_FIRST = Comparator
+            .comparingDouble((Ranked r) -> r.primary)
+            .thenComparingDouble(r -> r.secondary)
+            .thenComparingLong(r -> r.sequence);
+
+    private final int k;
+    private final ItineraryRanking ranking;
+    private final PriorityQueue<Ranked> heap;
+    private long sequence;
+
+    public TopItineraries(int k, ItineraryRanking ranking) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.ranking = ranking;
+        this.heap = new PriorityQueue<>(k + 1, BEST_FIRST.reversed());
+    }
+
+    public ItineraryRanking ranking() {
+        return ranking;
+    }
+
+    public boolean isFull() {
+        return heap.size() >= k;
+    }
+
+    /**
+     * Returns false when a partial itinerary whose primary key is already at least
+     * {@code partialPrimaryKey} can no longer enter the best K
+     */
+    public boolean canImprove(double partialPrimaryKey) {
+        return !isFull() || partialPrimaryKey <= heap.peek().primary;
+    }
+
+    public void offer(List<Connection> path) {
+        double[] keys = ranking.keys(path);
+        Ranked candidate = new Ranked(path, keys[0], keys[1], sequence++);
+        if (!isFull()) {
+            heap.add(candidate);
+        } else if (BEST_FIRST.compare(candidate, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    /**
+     * The kept itineraries, best first
+     */
+    public List<List<Connection>> toList() {
+        List<Ranked> ranked = new ArrayList<>(heap);
+        ranked.sort(BEST_FIRST);
+        List<List<Connection>> result = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) result.add(r.path);
+        return result;
+    }
+
+    private static final class Ranked {
+        final List<Connection> path;
+        final double primary;
+        final double secondary;
+        final long sequence;
+
+        Ranked(List<Connection> path, double primary, double secondary, long sequence) {
+            this.path = path;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.sequence = sequence;
+        }
+    }
+}
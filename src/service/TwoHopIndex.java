@@ -0,0 +1,154 @@
+package service;
+
+import model.DayMask;
+import model.RouteStore;
+import model.TimeUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed two-leg connections for every ordered city pair.
+ * For each pair the index stores every combination of a first and second leg that meets the
+ * {@link LayoverPolicy} with operating days in common, so a two-leg query becomes a hash
+ * lookup followed by filtering. Entries of a pair are ordered by the first leg's position on
+ * the origin's departure board, then by the second leg's departure, which is the order the
+ * depth-first search visits them in.
+ */
+public final class TwoHopIndex {
+    private final Map<Long, Pairs> byCityPair = new HashMap<>();
+    private final int entryCount;
+    private final long buildMillis;
+
+    TwoHopIndex(RouteStore table, DepartureBoard[] boardsByDepartureCity) {
+        long started = System.nanoTime();
+        LayoverPolicy layoverPolicy = LayoverPolicy.getInstance();
+        int entries = 0;
+
+        for (int origin = 0; origin < boardsByDepartureCity.length; origin++) {
+            DepartureBoard board = boardsByDepartureCity[origin];
+            if (board == null) continue;
+
+            for (int b = 0; b < board.size(); b++) {
+                int first = board.position(b);
+                int viaCity = table.arrivalCity(first);
+                if (viaCity == origin) continue;
+                DepartureBoard via = boardsByDepartureCity[viaCity];
+                if (via == null) continue;
+
+                int arrival = table.arrivalMinute(first);
+                int from = arrival + layoverPolicy.minTransferMinutes();
+                int to = arrival + layoverPolicy.maxTransferMinutes();
+                int start = via.nextDeparture(from);
+                int count = via.countBetween(from, to);
+
+                for (int k = 0; k < count; k++) {
+                    int second = via.position((start + k) % via.size());
+                    int destination = table.arrivalCity(second);
+                    if (destination == origin || destination == viaCity) continue;
+                    if (!layoverPolicy.isTransferAllowed(arrival, table.departureMinute(second))) continue;
+
+                    // The second leg departs dayOf(arrival offset + transfer) days after the first one
+                    int transfer = TimeUtils.waitMinutes(arrival, table.departureMinute(second));
+                    int shift = TimeUtils.dayOf(table.arrivalOffset(first) + transfer);
+                    int days = table.dayMask(first) & DayMask.rotate(table.dayMask(second), -shift);
+                    if (days == 0) continue;
+
+                    byCityPair.computeIfAbsent(key(origin, destination), d -> new Pairs())
+                            .add(b, first, second, transfer, days);
+                    entries++;
+                }
+            }
+        }
+
+        for (Pairs p : byCityPair.values()) p.trim();
+        this.entryCount = entries;
+        this.buildMillis = (System.nanoTime() - started) / 1_000_000;
+    }
+
+    /**
+     * Two-leg combinations from origin to destination, or null when there are none
+     */
+    Pairs lookup(int origin, int destination) {
+        return byCityPair.get(key(origin, destination));
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    public int cityPairCount() {
+        return byCityPair.size();
+    }
+
+    public long buildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Approximate heap footprint of the stored entries (five primitive columns per entry)
+     */
+    public long estimatedBytes() {
+        return (long) entryCount * (4 * Integer.BYTES + 1);
+    }
+
+    public String stats() {
+        return String.format("%d two-leg connections over %d city pairs, ~%d KB, built in %d ms",
+                entryCount, cityPairCount(), estimatedBytes() / 1024, buildMillis);
+    }
+
+    private static long key(int origin, int destination) {
+        return ((long) origin << 32) | destination;
+    }
+
+    /**
+     * Column store of the two-leg combinations of one city pair
+     */
+    static final class Pairs {
+        int size;
+        int[] firstBoardIndex = new int[4];
+        int[] firstLeg = new int[4];
+        int[] secondLeg = new int[4];
+        int[] transferMinutes = new int[4];
+        byte[] dayMask = new byte[4];
+
+        void add(int boardIndex, int first, int second, int transfer, int days) {
+            if (size == firstLeg.length) {
+                int capacity = size * 2;
+                firstBoardIndex = Arrays.copyOf(firstBoardIndex, capacity);
+                firstLeg = Arrays.copyOf(firstLeg, capacity);
+                secondLeg = Arrays.copyOf(secondLeg, capacity);
+                transferMinutes = Arrays.copyOf(transferMinutes, capacity);
+                dayMask = Arrays.copyOf(dayMask, capacity);
+            }
+            firstBoardIndex[size] = boardIndex;
+            firstLeg[size] = first;
+            secondLeg[size] = second;
+            transferMinutes[size] = transfer;
+            dayMask[size] = (byte) days;
+            size++;
+        }
+
+        void trim() {
+            firstBoardIndex = Arrays.copyOf(firstBoardIndex, size);
+            firstLeg = Arrays.copyOf(firstLeg, size);
+            secondLeg = Arrays.copyOf(secondLeg, size);
+            transferMinutes = Arrays.copyOf(transferMinutes, size);
+            dayMask = Arrays.copyOf(dayMask, size);
+        }
+
+        /**
+         * Index of the first entry whose first leg sits at or after the given board index
+         */
+        int lowerBound(int boardIndex) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (firstBoardIndex[mid] < boardIndex) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}